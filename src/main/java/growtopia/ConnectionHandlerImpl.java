@@ -0,0 +1,30 @@
+package growtopia;
+
+import growtopia.transport.Connection;
+import growtopia.transport.ConnectionHandler;
+import growtopia.transport.Delivery;
+import java.nio.charset.StandardCharsets;
+
+public final class ConnectionHandlerImpl implements ConnectionHandler {
+    @Override
+    public void onReceive(Connection connection, byte[] data) {
+        System.out.println(connection);
+        System.out.println(new String(data, StandardCharsets.US_ASCII));
+
+        final var packet = "hello".getBytes(StandardCharsets.US_ASCII);
+
+        // sends the nonsense packet
+        connection.send(packet, Delivery.RELIABLE);
+        connection.send(packet, Delivery.RELIABLE);
+    }
+
+    @Override
+    public void onConnect(Connection connection) {
+        System.out.println("Connected " + connection);
+    }
+
+    @Override
+    public void onDisconnect(Connection connection) {
+        System.out.println("Disconnected " + connection);
+    }
+}
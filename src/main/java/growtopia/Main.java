@@ -1,10 +1,143 @@
 package growtopia;
 
+import growtopia.cluster.ClusterHandler;
+import growtopia.cluster.FileCoordinator;
+import growtopia.cluster.Node;
+import growtopia.enet.ConnectionEventHandler;
 import growtopia.enet.EnetServer;
+import growtopia.enet.TrafficCapture;
+import growtopia.enet.TrafficReplay;
+import growtopia.enet.codec.ChecksumPolicy;
+import growtopia.enet.codec.CompressionPolicy;
+import growtopia.login.AdmissionConfig;
+import growtopia.login.AdmissionHandler;
+import growtopia.login.InMemoryAccountStore;
+import growtopia.login.PasswordHasher;
+import growtopia.snapshot.Snapshot;
+import growtopia.transport.BackpressurePolicy;
+import growtopia.transport.ConnectionHandler;
+import growtopia.transport.ThrottlingHandler;
+import growtopia.world.WorldHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public final class Main {
+    private static final String ACCOUNTS_SECTION = "accounts";
+    private static final String WORLD_DIRECTORY_SECTION = "world-directory";
+
+    /**
+     * How long shutdown waits for the server to drain and save, a little more than the transport's own drain
+     * timeout.
+     */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
     public static void main(String[] args) {
+        if (args.length >= 2 && args[0].equals("replay")) {
+            final var pace = args.length >= 3 && args[2].equals("--unthrottled")
+                    ? TrafficReplay.Pace.UNTHROTTLED
+                    : TrafficReplay.Pace.ORIGINAL;
+            System.out.println("Replaying " + args[1]);
+            System.out.println(TrafficReplay.replay(
+                    Path.of(args[1]),
+                    new ConnectionEventHandler(new ConnectionHandlerImpl()),
+                    pace
+            ));
+            return;
+        }
+
         System.out.println("Starting server");
-        EnetServer.start(new EventHandlerImpl());
+        final var port = Short.parseShort(System.getProperty("growtopia.port", Short.toString(EnetServer.DEFAULT_PORT)));
+        final var server = new EnetServer(
+                port,
+                Long.getLong("growtopia.peers", EnetServer.MAXIMUM_PEER_COUNT),
+                10,
+                "java".equals(System.getProperty("growtopia.engine"))
+                        ? EnetServer.Engine.JAVA
+                        : EnetServer.Engine.NATIVE,
+                EnetServer.DEFAULT_MAXIMUM_WAITING_DATA,
+                CompressionPolicy.named(System.getProperty("growtopia.compression", "native")),
+                ChecksumPolicy.named(System.getProperty("growtopia.checksum", "native"))
+        );
+        final var stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("Stopping server");
+            server.stop();
+            try {
+                stopped.await(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println(server.codecStats());
+        }));
+        try {
+            serve(server, port);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private static void serve(EnetServer server, short port) {
+        final var captureFile = System.getProperty("growtopia.capture");
+        if (captureFile != null) {
+            try (final var capture = TrafficCapture.open(
+                    Path.of(captureFile),
+                    new ConnectionEventHandler(new ConnectionHandlerImpl())
+            )) {
+                server.listen(capture);
+            }
+        }
+        else {
+            final var accounts = new InMemoryAccountStore();
+            final var worlds = new WorldHandler(new ConnectionHandlerImpl());
+            final var snapshotFile = System.getProperty("growtopia.snapshot");
+            if (snapshotFile != null && Files.exists(Path.of(snapshotFile))) {
+                try {
+                    final var snapshot = Snapshot.map(Path.of(snapshotFile));
+                    if (snapshot.section(ACCOUNTS_SECTION) != null) {
+                        accounts.restore(snapshot.section(ACCOUNTS_SECTION));
+                    }
+                    if (snapshot.section(WORLD_DIRECTORY_SECTION) != null) {
+                        worlds.directory().restore(snapshot.section(WORLD_DIRECTORY_SECTION));
+                    }
+                    System.out.println("Warm start from " + snapshot);
+                } catch (IllegalStateException e) {
+                    System.out.println("Cold start, " + e.getMessage());
+                }
+            }
+
+            ConnectionHandler handler = worlds;
+            final var clusterDirectory = System.getProperty("growtopia.cluster");
+            if (clusterDirectory != null) {
+                final var coordinator = new FileCoordinator(Path.of(clusterDirectory));
+                final var node = new Node(
+                        System.getProperty("growtopia.node", "node-" + port),
+                        System.getProperty("growtopia.host", "127.0.0.1"),
+                        Short.toUnsignedInt(port)
+                );
+                coordinator.join(node);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> coordinator.leave(node.id())));
+                System.out.println("Joined cluster as " + node);
+                handler = new ClusterHandler(handler, coordinator, node);
+            }
+            try (final var admission = new AdmissionHandler(
+                    handler,
+                    accounts,
+                    new PasswordHasher(),
+                    AdmissionConfig.DEFAULT
+            )) {
+                server.run(new ThrottlingHandler(admission, connection -> BackpressurePolicy.MERGE));
+            }
+
+            if (snapshotFile != null) {
+                Snapshot.write(Path.of(snapshotFile), Map.of(
+                        ACCOUNTS_SECTION, accounts.snapshot(),
+                        WORLD_DIRECTORY_SECTION, worlds.directory().snapshot()
+                ));
+                System.out.println("Saved snapshot to " + snapshotFile);
+            }
+        }
     }
 }
@@ -0,0 +1,177 @@
+package growtopia.cluster;
+
+import growtopia.protocol.Messages;
+import growtopia.protocol.VariantList;
+import growtopia.transport.Connection;
+import growtopia.transport.ConnectionHandler;
+import growtopia.transport.Delivery;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Runs a node of a cluster in front of the game handler. Join requests for worlds this node owns are passed on;
+ * anyone asking for a world owned by another node is sent there with {@code OnSendToServer}, and the client
+ * retries the join on that node.
+ *
+ * Membership is checked on every event and whenever the transport is idle. When it changes, the players in every
+ * world this node no longer owns are sent on to the world's new owner, which is how worlds move when a node joins
+ * or drains. Load is published to the coordinator at most once per {@link #PUBLISH_INTERVAL_MILLIS} when it
+ * changes, and at least once per {@link #HEARTBEAT_INTERVAL_MILLIS} regardless, which is how other nodes tell this
+ * one is still alive.
+ */
+public final class ClusterHandler implements ConnectionHandler {
+    static final long PUBLISH_INTERVAL_MILLIS = 1000;
+    static final long HEARTBEAT_INTERVAL_MILLIS = 3000;
+
+    /**
+     * Tells the client the node it is being sent to is a sub server of this one, rather than a fresh login.
+     */
+    private static final int SUB_SERVER_LOGIN_MODE = 1;
+
+    private final ConnectionHandler handler;
+    private final Coordinator coordinator;
+    private final Node self;
+    private final HashMap<String, HashSet<Connection>> residents = new HashMap<>();
+    private final HashMap<Connection, String> worldOf = new HashMap<>();
+    private HashRing ring = new HashRing(List.of());
+    private long ringVersion = -1;
+    private int connections = 0;
+    private NodeLoad published = NodeLoad.NONE;
+
+    public ClusterHandler(ConnectionHandler handler, Coordinator coordinator, Node self) {
+        this.handler = handler;
+        this.coordinator = coordinator;
+        this.self = self;
+    }
+
+    /**
+     * What this node is carrying right now.
+     */
+    public NodeLoad load() {
+        return new NodeLoad(this.connections, this.residents.size(), System.currentTimeMillis());
+    }
+
+    public HashRing ring() {
+        return this.ring;
+    }
+
+    private void refresh() {
+        final var version = this.coordinator.version();
+        if (version != this.ringVersion) {
+            this.ringVersion = version;
+            final var nodes = new ArrayList<Node>();
+            for (final var member : this.coordinator.members()) {
+                if (!member.draining()) {
+                    nodes.add(member.node());
+                }
+            }
+            this.ring = new HashRing(nodes);
+            this.rebalance();
+        }
+
+        final var load = this.load();
+        final var sincePublished = load.updatedEpochMillis() - this.published.updatedEpochMillis();
+        final var changed = load.connections() != this.published.connections()
+                || load.worlds() != this.published.worlds();
+        if ((changed && sincePublished >= PUBLISH_INTERVAL_MILLIS) || sincePublished >= HEARTBEAT_INTERVAL_MILLIS) {
+            this.coordinator.publishLoad(this.self.id(), load);
+            this.published = load;
+        }
+    }
+
+    /**
+     * Sends the players of every world this node no longer owns to the world's new owner.
+     */
+    private void rebalance() {
+        final var moved = new ArrayList<String>();
+        for (final var world : this.residents.keySet()) {
+            final var owner = this.ring.owner(world);
+            if (owner != null && !owner.id().equals(this.self.id())) {
+                moved.add(world);
+            }
+        }
+        for (final var world : moved) {
+            final var owner = this.ring.owner(world);
+            for (final var connection : this.residents.remove(world)) {
+                this.worldOf.remove(connection);
+                this.redirect(connection, owner);
+            }
+        }
+    }
+
+    private void redirect(Connection connection, Node owner) {
+        connection.send(
+                new VariantList("OnSendToServer")
+                        .add(owner.port())
+                        .add((int) connection.id())
+                        .add(0)
+                        .add(owner.host() + "||-1")
+                        .add(SUB_SERVER_LOGIN_MODE)
+                        .encode(),
+                Delivery.RELIABLE
+        );
+    }
+
+    private void leaveWorld(Connection connection) {
+        final var world = this.worldOf.remove(connection);
+        if (world != null) {
+            final var players = this.residents.get(world);
+            players.remove(connection);
+            if (players.isEmpty()) {
+                this.residents.remove(world);
+            }
+        }
+    }
+
+    @Override
+    public void onConnect(Connection connection) {
+        this.connections++;
+        this.refresh();
+        this.handler.onConnect(connection);
+    }
+
+    @Override
+    public void onReceive(Connection connection, byte[] data) {
+        this.refresh();
+        if (Messages.type(data) == Messages.GAME_MESSAGE) {
+            final var fields = Messages.text(data);
+            final var action = fields.get("action");
+            if ("join_request".equals(action) && fields.containsKey("name")) {
+                final var world = fields.get("name").toUpperCase();
+                final var owner = this.ring.owner(world);
+                if (owner != null && !owner.id().equals(this.self.id())) {
+                    this.redirect(connection, owner);
+                    return;
+                }
+                this.leaveWorld(connection);
+                this.worldOf.put(connection, world);
+                this.residents.computeIfAbsent(world, w -> new HashSet<>()).add(connection);
+            }
+            else if ("quit_to_exit".equals(action)) {
+                this.leaveWorld(connection);
+            }
+        }
+        this.handler.onReceive(connection, data);
+    }
+
+    @Override
+    public void onDisconnect(Connection connection) {
+        this.leaveWorld(connection);
+        this.connections--;
+        this.refresh();
+        this.handler.onDisconnect(connection);
+    }
+
+    @Override
+    public void onIdle() {
+        this.refresh();
+        this.handler.onIdle();
+    }
+
+    @Override
+    public void onStop() {
+        this.handler.onStop();
+    }
+}
@@ -0,0 +1,30 @@
+package growtopia.cluster;
+
+import java.util.List;
+
+/**
+ * Shared view of which nodes are in the cluster. Every node places worlds on the same {@link HashRing} built from
+ * the non-draining members, so nodes never have to agree on anything beyond membership.
+ */
+public interface Coordinator {
+    /**
+     * Adds the node, or puts it back into service if it was draining.
+     */
+    void join(Node node);
+
+    /**
+     * Stops assigning worlds to the node. Its players are sent to the new owners of their worlds.
+     */
+    void drain(String nodeId);
+
+    void leave(String nodeId);
+
+    void publishLoad(String nodeId, NodeLoad load);
+
+    List<Member> members();
+
+    /**
+     * Changes whenever a node joins, drains or leaves. Called on every event, so it must be cheap.
+     */
+    long version();
+}
@@ -0,0 +1,244 @@
+package growtopia.cluster;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A coordinator backed by a directory, typically on a shared mount, holding one properties file per node. Good
+ * enough for a handful of nodes; anything bigger wants a real coordination service behind {@link Coordinator}.
+ *
+ * Files are replaced atomically, so readers never see a half written node. Membership is re-read every
+ * {@link #REFRESH_MILLIS} on a background thread, and loads are written there too, so {@link #version},
+ * {@link #members} and {@link #publishLoad} never touch the disk on the caller's thread.
+ *
+ * Nodes are expected to {@link #leave} on shutdown. One that dies without doing so stops publishing its load, and is
+ * treated as gone once its last update is more than {@link #EXPIRY_MILLIS} old, so the clocks of the nodes sharing a
+ * directory need to roughly agree. Its file is left for it to pick up again if it comes back. Nodes that joined
+ * through this coordinator are kept in memory and never expire here, however late their own writes are.
+ */
+public final class FileCoordinator implements Coordinator {
+    static final long REFRESH_MILLIS = 1000;
+
+    /**
+     * Several times {@link ClusterHandler#HEARTBEAT_INTERVAL_MILLIS}, so a slow write or a busy node isn't mistaken
+     * for a dead one.
+     */
+    static final long EXPIRY_MILLIS = 10 * REFRESH_MILLIS;
+    private static final String SUFFIX = ".node";
+
+    private final Path directory;
+    private final ConcurrentHashMap<String, Member> local = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "file-coordinator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile List<Member> members = List.of();
+    private volatile long version = 0;
+
+    public FileCoordinator(Path directory) {
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.refresh();
+        this.background.scheduleWithFixedDelay(() -> {
+            try {
+                this.refresh();
+            } catch (UncheckedIOException e) {
+                // Keep the last view and try again next time.
+            }
+        }, REFRESH_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private Path fileFor(String nodeId) {
+        return this.directory.resolve(nodeId + SUFFIX);
+    }
+
+    /**
+     * Writes what is held in memory for a node that joined through this coordinator. Always writes the latest state,
+     * so writes racing each other can't leave an older one on disk.
+     */
+    private synchronized void writeLocal(String nodeId) {
+        final var member = this.local.get(nodeId);
+        if (member != null) {
+            this.write(member);
+        }
+    }
+
+    private void write(Member member) {
+        final var properties = new Properties();
+        properties.setProperty("host", member.node().host());
+        properties.setProperty("port", Integer.toString(member.node().port()));
+        properties.setProperty("draining", Boolean.toString(member.draining()));
+        properties.setProperty("connections", Integer.toString(member.load().connections()));
+        properties.setProperty("worlds", Integer.toString(member.load().worlds()));
+        properties.setProperty("updated", Long.toString(member.load().updatedEpochMillis()));
+        try {
+            final var temporary = Files.createTempFile(this.directory, member.node().id(), ".tmp");
+            try (final var out = Files.newOutputStream(temporary)) {
+                properties.store(out, null);
+            }
+            Files.move(temporary, this.fileFor(member.node().id()), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Member read(Path file) throws IOException {
+        final var properties = new Properties();
+        try (final var in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        final var name = file.getFileName().toString();
+        return new Member(
+                new Node(
+                        name.substring(0, name.length() - SUFFIX.length()),
+                        properties.getProperty("host"),
+                        Integer.parseInt(properties.getProperty("port"))
+                ),
+                Boolean.parseBoolean(properties.getProperty("draining")),
+                new NodeLoad(
+                        Integer.parseInt(properties.getProperty("connections", "0")),
+                        Integer.parseInt(properties.getProperty("worlds", "0")),
+                        Long.parseLong(properties.getProperty("updated", "0"))
+                )
+        );
+    }
+
+    private synchronized void refresh() {
+        final var now = System.currentTimeMillis();
+        final var members = new ArrayList<Member>(this.local.values());
+        try (final var files = Files.list(this.directory)) {
+            for (final var file : (Iterable<Path>) files::iterator) {
+                final var name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX)
+                        && !this.local.containsKey(name.substring(0, name.length() - SUFFIX.length()))) {
+                    try {
+                        final var member = this.read(file);
+                        if (now - member.load().updatedEpochMillis() <= EXPIRY_MILLIS) {
+                            members.add(member);
+                        }
+                    } catch (NoSuchFileException e) {
+                        // left between listing and reading
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        members.sort(Comparator.comparing(member -> member.node().id()));
+
+        final var changed = membershipChanged(this.members, members);
+        this.members = List.copyOf(members);
+        if (changed) {
+            // After the members, so whoever sees the new version also sees them.
+            this.version++;
+        }
+    }
+
+    private static boolean membershipChanged(List<Member> before, List<Member> after) {
+        if (before.size() != after.size()) {
+            return true;
+        }
+        for (int i = 0; i < before.size(); i++) {
+            if (!before.get(i).node().equals(after.get(i).node())
+                    || before.get(i).draining() != after.get(i).draining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Also counts as an update, so a node rejoining after a crash isn't expired before it publishes its load.
+     */
+    @Override
+    public void join(Node node) {
+        this.local.put(node.id(), new Member(node, false, new NodeLoad(0, 0, System.currentTimeMillis())));
+        this.writeLocal(node.id());
+        this.refresh();
+    }
+
+    /**
+     * Nodes that didn't join through this coordinator are drained through their file, and stay drained only until
+     * they next publish their load.
+     */
+    @Override
+    public void drain(String nodeId) {
+        final var member = this.local.computeIfPresent(
+                nodeId,
+                (id, joined) -> new Member(joined.node(), true, joined.load())
+        );
+        if (member != null) {
+            this.writeLocal(nodeId);
+        }
+        else {
+            try {
+                final var remote = this.read(this.fileFor(nodeId));
+                if (!remote.draining()) {
+                    this.write(new Member(remote.node(), true, remote.load()));
+                }
+            } catch (NoSuchFileException e) {
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        this.refresh();
+    }
+
+    @Override
+    public synchronized void leave(String nodeId) {
+        this.local.remove(nodeId);
+        try {
+            Files.deleteIfExists(this.fileFor(nodeId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.refresh();
+    }
+
+    /**
+     * Only nodes that joined through this coordinator publish. The write happens on the background thread.
+     */
+    @Override
+    public void publishLoad(String nodeId, NodeLoad load) {
+        final var member = this.local.computeIfPresent(
+                nodeId,
+                (id, joined) -> new Member(joined.node(), joined.draining(), load)
+        );
+        if (member != null) {
+            this.background.execute(() -> {
+                try {
+                    this.writeLocal(nodeId);
+                } catch (UncheckedIOException e) {
+                    // The next publish writes the latest load anyway.
+                }
+            });
+        }
+    }
+
+    @Override
+    public List<Member> members() {
+        return this.members;
+    }
+
+    @Override
+    public long version() {
+        return this.version;
+    }
+}
@@ -0,0 +1,72 @@
+package growtopia.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hashing of world names onto nodes. Each node is placed on the ring at {@link #POINTS_PER_NODE}
+ * pseudo-random points, and a world belongs to the node owning the first point at or after the world's hash. Adding
+ * or removing a node only moves the worlds between it and its neighbours, about 1/n of them.
+ *
+ * Points are kept in one sorted primitive array, so a lookup is a binary search with no allocation.
+ */
+public final class HashRing {
+    static final int POINTS_PER_NODE = 128;
+
+    private final long[] points;
+    private final Node[] owners;
+
+    public HashRing(List<Node> nodes) {
+        final var count = nodes.size() * POINTS_PER_NODE;
+        final var entries = new long[count][];
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int point = 0; point < POINTS_PER_NODE; point++) {
+                entries[i * POINTS_PER_NODE + point] = new long[] {hash(nodes.get(i).id() + '#' + point), i};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        this.points = new long[count];
+        this.owners = new Node[count];
+        for (int i = 0; i < count; i++) {
+            this.points[i] = entries[i][0];
+            this.owners[i] = nodes.get((int) entries[i][1]);
+        }
+    }
+
+    /**
+     * The node a world belongs to, or null if the ring is empty. World names are not case sensitive.
+     */
+    public Node owner(String world) {
+        if (this.points.length == 0) {
+            return null;
+        }
+        var index = Arrays.binarySearch(this.points, hash(world.toUpperCase()));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return this.owners[index == this.points.length ? 0 : index];
+    }
+
+    public boolean isEmpty() {
+        return this.points.length == 0;
+    }
+
+    /**
+     * 64 bit FNV-1a, finished with the MurmurHash3 mixer so that similar names still spread evenly.
+     */
+    static long hash(String key) {
+        var hash = 0xcbf29ce484222325L;
+        for (final var b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,53 @@
+package growtopia.cluster;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A coordinator for nodes that share a process, for running a cluster locally.
+ */
+public final class InProcessCoordinator implements Coordinator {
+    private final LinkedHashMap<String, Member> members = new LinkedHashMap<>();
+    private volatile long version = 0;
+
+    @Override
+    public synchronized void join(Node node) {
+        final var previous = this.members.get(node.id());
+        this.members.put(node.id(), new Member(node, false, previous == null ? NodeLoad.NONE : previous.load()));
+        this.version++;
+    }
+
+    @Override
+    public synchronized void drain(String nodeId) {
+        final var member = this.members.get(nodeId);
+        if (member != null && !member.draining()) {
+            this.members.put(nodeId, new Member(member.node(), true, member.load()));
+            this.version++;
+        }
+    }
+
+    @Override
+    public synchronized void leave(String nodeId) {
+        if (this.members.remove(nodeId) != null) {
+            this.version++;
+        }
+    }
+
+    @Override
+    public synchronized void publishLoad(String nodeId, NodeLoad load) {
+        final var member = this.members.get(nodeId);
+        if (member != null) {
+            this.members.put(nodeId, new Member(member.node(), member.draining(), load));
+        }
+    }
+
+    @Override
+    public synchronized List<Member> members() {
+        return List.copyOf(this.members.values());
+    }
+
+    @Override
+    public long version() {
+        return this.version;
+    }
+}
@@ -0,0 +1,7 @@
+package growtopia.cluster;
+
+/**
+ * A node as its {@link Coordinator} sees it. Draining nodes are still members, so their load stays visible while
+ * their players move off, but no worlds are assigned to them.
+ */
+public record Member(Node node, boolean draining, NodeLoad load) {}
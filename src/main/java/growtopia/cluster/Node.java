@@ -0,0 +1,12 @@
+package growtopia.cluster;
+
+/**
+ * One server in a cluster, and where clients should connect to reach it.
+ */
+public record Node(String id, String host, int port) {
+    public Node {
+        if (id.isEmpty() || id.indexOf('|') >= 0) {
+            throw new IllegalArgumentException("Bad node id " + id);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package growtopia.cluster;
+
+/**
+ * What a node was carrying when it last reported in.
+ */
+public record NodeLoad(int connections, int worlds, long updatedEpochMillis) {
+    public static final NodeLoad NONE = new NodeLoad(0, 0, 0);
+}
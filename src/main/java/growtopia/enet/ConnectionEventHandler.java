@@ -0,0 +1,63 @@
+package growtopia.enet;
+
+import growtopia.transport.Connection;
+import growtopia.transport.ConnectionHandler;
+import java.util.Arrays;
+
+/**
+ * Translates libenet events into {@link ConnectionHandler} callbacks, giving each peer one {@link Connection}
+ * for as long as it is connected.
+ *
+ * Connections are tracked by the peer's slot in the host, since that is the only thing about a peer that libenet
+ * leaves alone until its disconnect event has been dispatched.
+ */
+public final class ConnectionEventHandler implements EventHandler {
+    private final ConnectionHandler handler;
+    private EnetConnection[] connections = new EnetConnection[64];
+    private long nextId = 0;
+
+    public ConnectionEventHandler(ConnectionHandler handler) {
+        this.handler = handler;
+    }
+
+    private EnetConnection connectionFor(Enet.Peer peer) {
+        final var slot = Short.toUnsignedInt(peer.incomingPeerID());
+        if (slot >= this.connections.length) {
+            this.connections = Arrays.copyOf(this.connections, Math.max(slot + 1, this.connections.length * 2));
+        }
+        var connection = this.connections[slot];
+        if (connection == null) {
+            connection = new EnetConnection(++this.nextId, peer);
+            this.connections[slot] = connection;
+        }
+        return connection;
+    }
+
+    @Override
+    public void onReceive(Enet.Event.Receive receiveEvent) {
+        this.handler.onReceive(this.connectionFor(receiveEvent.peer()), receiveEvent.data());
+    }
+
+    @Override
+    public void onConnect(Enet.Event.Connect connectEvent) {
+        this.handler.onConnect(this.connectionFor(connectEvent.peer()));
+    }
+
+    @Override
+    public void onDisconnect(Enet.Event.Disconnect disconnectEvent) {
+        final var connection = this.connectionFor(disconnectEvent.peer());
+        this.connections[Short.toUnsignedInt(disconnectEvent.peer().incomingPeerID())] = null;
+        connection.close();
+        this.handler.onDisconnect(connection);
+    }
+
+    @Override
+    public void onIdle() {
+        this.handler.onIdle();
+    }
+
+    @Override
+    public void onStop() {
+        this.handler.onStop();
+    }
+}
@@ -1,6 +1,9 @@
 package growtopia.enet;
 
+import growtopia.enet.codec.CodecStats;
+import growtopia.enet.codec.Compressor;
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.invoke.VarHandle;
 import java.lang.ref.Cleaner;
@@ -10,6 +13,7 @@ import java.util.Arrays;
 import java.util.EnumSet;
 
 import java.util.Objects;
+import java.util.zip.Checksum;
 import jdk.incubator.foreign.*;
 
 import static jdk.incubator.foreign.CLinker.*;
@@ -23,7 +27,7 @@ public final class Enet {
 
     private static final Cleaner CLEANER = Cleaner.create();
 
-    private static final LibraryLookup LIBRARY_LOOKUP = lookup();
+    static final LibraryLookup LIBRARY_LOOKUP = lookup();
 
     private static LibraryLookup lookup() {
         try {
@@ -80,6 +84,13 @@ public final class Enet {
             FunctionDescriptor.ofVoid(C_POINTER)
     );
 
+    /* enet_host_flush */
+    private static final MethodHandle ENET_HOST_FLUSH = CLinker.getInstance().downcallHandle(
+            LIBRARY_LOOKUP.lookup("enet_host_flush").get(),
+            MethodType.methodType(void.class, MemoryAddress.class),
+            FunctionDescriptor.ofVoid(C_POINTER)
+    );
+
     /* enet_host_create */
 
     private static final MethodHandle ENET_HOST_CREATE = CLinker.getInstance().downcallHandle(
@@ -102,6 +113,34 @@ public final class Enet {
             FunctionDescriptor.of(C_POINTER, C_POINTER, C_LONG, C_INT)
     );
 
+    /* enet_packet_destroy */
+    private static final MethodHandle ENET_PACKET_DESTROY = CLinker.getInstance().downcallHandle(
+            LIBRARY_LOOKUP.lookup("enet_packet_destroy").get(),
+            MethodType.methodType(void.class, MemoryAddress.class),
+            FunctionDescriptor.ofVoid(C_POINTER)
+    );
+
+    /* enet_peer_disconnect */
+    private static final MethodHandle ENET_PEER_DISCONNECT = CLinker.getInstance().downcallHandle(
+            LIBRARY_LOOKUP.lookup("enet_peer_disconnect").get(),
+            MethodType.methodType(void.class, MemoryAddress.class, int.class),
+            FunctionDescriptor.ofVoid(C_POINTER, C_INT)
+    );
+
+    /* enet_peer_disconnect_later */
+    private static final MethodHandle ENET_PEER_DISCONNECT_LATER = CLinker.getInstance().downcallHandle(
+            LIBRARY_LOOKUP.lookup("enet_peer_disconnect_later").get(),
+            MethodType.methodType(void.class, MemoryAddress.class, int.class),
+            FunctionDescriptor.ofVoid(C_POINTER, C_INT)
+    );
+
+    /* enet_peer_disconnect_now */
+    private static final MethodHandle ENET_PEER_DISCONNECT_NOW = CLinker.getInstance().downcallHandle(
+            LIBRARY_LOOKUP.lookup("enet_peer_disconnect_now").get(),
+            MethodType.methodType(void.class, MemoryAddress.class, int.class),
+            FunctionDescriptor.ofVoid(C_POINTER, C_INT)
+    );
+
     /* enet_peer_send */
     private static final MethodHandle ENET_PEER_SEND = CLinker.getInstance().downcallHandle(
             LIBRARY_LOOKUP.lookup("enet_peer_send").get(),
@@ -141,6 +180,8 @@ public final class Enet {
 
     public static final class Host implements AutoCloseable {
         private final MemoryAddress hostAddress;
+        private final CodecStats codecStats = new CodecStats();
+        private NativeCodec codec;
 
         private Host(MemoryAddress hostAddress) {
             this.hostAddress = hostAddress;
@@ -343,6 +384,45 @@ public final class Enet {
                 MemoryLayout.PathElement.groupElement("checksum")
         );
 
+        private static final VarHandle COMPRESSOR_CONTEXT_HANDLE = LAYOUT.varHandle(
+                long.class,
+                MemoryLayout.PathElement.groupElement("compressor"),
+                MemoryLayout.PathElement.groupElement("context")
+        );
+
+        private static final VarHandle COMPRESSOR_COMPRESS_HANDLE = LAYOUT.varHandle(
+                long.class,
+                MemoryLayout.PathElement.groupElement("compressor"),
+                MemoryLayout.PathElement.groupElement("compress")
+        );
+
+        private static final VarHandle COMPRESSOR_DECOMPRESS_HANDLE = LAYOUT.varHandle(
+                long.class,
+                MemoryLayout.PathElement.groupElement("compressor"),
+                MemoryLayout.PathElement.groupElement("decompress")
+        );
+
+        private static final VarHandle COMPRESSOR_DESTROY_HANDLE = LAYOUT.varHandle(
+                long.class,
+                MemoryLayout.PathElement.groupElement("compressor"),
+                MemoryLayout.PathElement.groupElement("destroy")
+        );
+
+        private static final VarHandle PEERS_HANDLE = LAYOUT.varHandle(
+                long.class,
+                MemoryLayout.PathElement.groupElement("peers")
+        );
+
+        private static final VarHandle PEER_COUNT_HANDLE = LAYOUT.varHandle(
+                long.class,
+                MemoryLayout.PathElement.groupElement("peerCount")
+        );
+
+        private static final VarHandle MAXIMUM_WAITING_DATA_HANDLE = LAYOUT.varHandle(
+                long.class,
+                MemoryLayout.PathElement.groupElement("maximumWaitingData")
+        );
+
         public static Host create(Address address, long peerCount, long channelLimit, int incomingBandwidth, int outgoingBandwidth) {
             try (final var addressPointer = address.asStruct()) {
                 final var hostAddress = (MemoryAddress) ENET_HOST_CREATE.invoke(
@@ -393,6 +473,69 @@ public final class Enet {
             );
         }
 
+        /**
+         * Caps how much received data a single peer may have buffered while it waits to be dispatched, such as
+         * reliable packets that arrived ahead of a lost one. libenet treats anything past the cap as a protocol
+         * error and drops it, so a client can't make the server hold on to arbitrary amounts of memory.
+         */
+        void setMaximumWaitingData(long maximumWaitingData) {
+            MAXIMUM_WAITING_DATA_HANDLE.set(
+                    this.hostAddress.asSegmentRestricted(LAYOUT.byteSize()),
+                    maximumWaitingData
+            );
+        }
+
+        private NativeCodec codec() {
+            if (this.codec == null) {
+                this.codec = new NativeCodec(this.codecStats);
+            }
+            return this.codec;
+        }
+
+        /**
+         * Checksums datagrams with a Java checksum, through an upcall, or stops checksumming them if null.
+         */
+        void setChecksum(Checksum checksum) {
+            final var segment = this.hostAddress.asSegmentRestricted(LAYOUT.byteSize());
+            if (checksum == null) {
+                CHECKSUM_HANDLE.set(segment, 0L);
+                return;
+            }
+            final var codec = this.codec();
+            codec.checksum = checksum;
+            CHECKSUM_HANDLE.set(segment, codec.checksumFunction().toRawLongValue());
+        }
+
+        /**
+         * Compresses datagrams with a Java compressor, through upcalls, or stops compressing them if null. This
+         * replaces rather than destroys any compressor already installed, so it is not to be combined with
+         * {@link #compressWithRangeCoder()}.
+         */
+        void setCompressor(Compressor compressor) {
+            final var segment = this.hostAddress.asSegmentRestricted(LAYOUT.byteSize());
+            if (compressor == null) {
+                COMPRESSOR_CONTEXT_HANDLE.set(segment, 0L);
+                COMPRESSOR_COMPRESS_HANDLE.set(segment, 0L);
+                COMPRESSOR_DECOMPRESS_HANDLE.set(segment, 0L);
+                COMPRESSOR_DESTROY_HANDLE.set(segment, 0L);
+                return;
+            }
+            final var codec = this.codec();
+            codec.compressor = compressor;
+            COMPRESSOR_CONTEXT_HANDLE.set(segment, codec.context().toRawLongValue());
+            COMPRESSOR_COMPRESS_HANDLE.set(segment, codec.compressFunction().toRawLongValue());
+            COMPRESSOR_DECOMPRESS_HANDLE.set(segment, codec.decompressFunction().toRawLongValue());
+            COMPRESSOR_DESTROY_HANDLE.set(segment, 0L);
+        }
+
+        /**
+         * What compression and checksums installed through {@link #setCompressor} and {@link #setChecksum} have
+         * cost and saved. libenet's own range coder and CRC32 aren't measured.
+         */
+        public CodecStats codecStats() {
+            return this.codecStats;
+        }
+
         void compressWithRangeCoder() {
             try {
                 ENET_HOST_COMPRESS_WITH_RANGE_CODER.invoke(this.hostAddress);
@@ -401,13 +544,108 @@ public final class Enet {
             }
         }
 
+        /**
+         * How long enet_host_service may block, which is also the longest a handler goes without
+         * {@link EventHandler#onIdle()} while there is no traffic.
+         */
+        private static final int SERVICE_TIMEOUT_MILLIS = 10;
+        private static final long IDLE_INTERVAL_NANOS = SERVICE_TIMEOUT_MILLIS * 1_000_000L;
+
+        /**
+         * How long a stopping host waits for its peers to acknowledge their disconnects before cutting them off.
+         */
+        static final long DRAIN_TIMEOUT_NANOS = 5_000_000_000L;
+
+        private volatile boolean stopRequested;
+
+        /**
+         * Makes {@link #listenForEvents} drain its peers and return. May be called from any thread; the service
+         * thread notices within {@link #SERVICE_TIMEOUT_MILLIS}.
+         */
+        void stop() {
+            this.stopRequested = true;
+        }
+
+        /**
+         * Asks every connected peer that hasn't been asked yet to disconnect with enet_peer_disconnect_later, so
+         * that what was already sent to it goes out first. Returns whether any peers are left.
+         */
+        private boolean disconnectPeers() {
+            final var host = this.hostAddress.asSegmentRestricted(LAYOUT.byteSize());
+            final var peerCount = (long) PEER_COUNT_HANDLE.get(host);
+            final var peers = MemoryAddress.ofLong((long) PEERS_HANDLE.get(host))
+                    .asSegmentRestricted(peerCount * Peer.LAYOUT.byteSize());
+            var remaining = false;
+            for (var i = 0L; i < peerCount; i++) {
+                final var peer = peers.asSlice(i * Peer.LAYOUT.byteSize(), Peer.LAYOUT.byteSize());
+                final var state = MemoryAccess.getIntAtOffset(peer, Peer.STATE_OFFSET);
+                if (state == Peer.STATE_CONNECTED || state == Peer.STATE_ACKNOWLEDGING_CONNECT) {
+                    new Peer(peer.address()).disconnectLater(0);
+                }
+                remaining |= state != Peer.STATE_DISCONNECTED;
+            }
+            return remaining;
+        }
+
+        /**
+         * Cuts off every peer still left once the drain has timed out. Those the handler was told had connected get
+         * the disconnect event libenet would have produced, so its view of who is connected ends up empty.
+         */
+        private void resetPeers(EventHandler callback, MemorySegment eventSegment) {
+            final var host = this.hostAddress.asSegmentRestricted(LAYOUT.byteSize());
+            final var peerCount = (long) PEER_COUNT_HANDLE.get(host);
+            final var peers = MemoryAddress.ofLong((long) PEERS_HANDLE.get(host))
+                    .asSegmentRestricted(peerCount * Peer.LAYOUT.byteSize());
+            for (var i = 0L; i < peerCount; i++) {
+                final var peer = peers.asSlice(i * Peer.LAYOUT.byteSize(), Peer.LAYOUT.byteSize());
+                final var state = MemoryAccess.getIntAtOffset(peer, Peer.STATE_OFFSET);
+                if (state == Peer.STATE_DISCONNECTED) {
+                    continue;
+                }
+                new Peer(peer.address()).disconnectNow(0);
+                // Every state from connected on comes after the connect event.
+                if (state >= Peer.STATE_CONNECTED) {
+                    MemoryAccess.setIntAtOffset(eventSegment, Event.TYPE_OFFSET, Event.TYPE_DISCONNECT);
+                    MemoryAccess.setAddressAtOffset(eventSegment, Event.PEER_OFFSET, peer.address());
+                    MemoryAccess.setAddressAtOffset(eventSegment, Event.PACKET_OFFSET, MemoryAddress.NULL);
+                    callback.onDisconnect((Event.Disconnect) Event.fromUnsafe(eventSegment));
+                }
+            }
+        }
+
+        /**
+         * Services the host until {@link #stop()} is called, then disconnects every peer, waiting up to
+         * {@link #DRAIN_TIMEOUT_NANOS} for them to go, flushes, and returns. Peers that haven't gone by then are
+         * cut off, and the handler is told they disconnected. Peers that finish connecting while the host drains
+         * are cut off without the handler hearing of them.
+         */
         void listenForEvents(EventHandler callback) {
             final var eventSegment = MemorySegment
                     .allocateNative(Event.LAYOUT)
                     .registerCleaner(CLEANER);
+            var lastIdle = System.nanoTime();
+            var draining = false;
+            var drainStartedNanos = 0L;
             while (true) {
                 try {
-                    final var status = (int) ENET_HOST_SERVICE.invoke(this.hostAddress, eventSegment.address(), 1000);
+                    if (this.stopRequested && !draining) {
+                        draining = true;
+                        drainStartedNanos = System.nanoTime();
+                        callback.onStop();
+                    }
+                    if (draining
+                            && (!this.disconnectPeers()
+                            || System.nanoTime() - drainStartedNanos >= DRAIN_TIMEOUT_NANOS)) {
+                        ENET_HOST_FLUSH.invoke(this.hostAddress);
+                        this.resetPeers(callback, eventSegment);
+                        return;
+                    }
+
+                    final var status = (int) ENET_HOST_SERVICE.invoke(
+                            this.hostAddress,
+                            eventSegment.address(),
+                            SERVICE_TIMEOUT_MILLIS
+                    );
                     if (status == 0) {
                         // no event, pass
                     }
@@ -421,12 +659,23 @@ public final class Enet {
                             callback.onReceive((Event.Receive) ev);
                         }
                         else if (ev instanceof Event.Connect) {
-                            callback.onConnect((Event.Connect) ev);
+                            if (draining) {
+                                ((Event.Connect) ev).peer().disconnectNow(0);
+                            }
+                            else {
+                                callback.onConnect((Event.Connect) ev);
+                            }
                         }
                         else if (ev instanceof Event.Disconnect) {
                             callback.onDisconnect((Event.Disconnect) ev);
                         }
                     }
+
+                    final var now = System.nanoTime();
+                    if (status == 0 || now - lastIdle >= IDLE_INTERVAL_NANOS) {
+                        lastIdle = now;
+                        callback.onIdle();
+                    }
                 } catch (Throwable throwable) {
                     throw new RuntimeException(throwable);
                 }
@@ -439,6 +688,10 @@ public final class Enet {
                 ENET_HOST_DESTROY.invoke(this.hostAddress);
             } catch (Throwable throwable) {
                 throw new RuntimeException(throwable);
+            } finally {
+                if (this.codec != null) {
+                    this.codec.close();
+                }
             }
         }
     }
@@ -464,8 +717,13 @@ public final class Enet {
          * Constructs an event from a memory segment owned by the caller. The lifetime of the Event is bounded
          * on when the caller wants to release that memory.
          */
+        static final long TYPE_OFFSET = LAYOUT.byteOffset(MemoryLayout.PathElement.groupElement("type"));
+        static final long PEER_OFFSET = LAYOUT.byteOffset(MemoryLayout.PathElement.groupElement("peer"));
+        static final long PACKET_OFFSET = LAYOUT.byteOffset(MemoryLayout.PathElement.groupElement("packet"));
+        static final int TYPE_DISCONNECT = 2;
+
         static Event fromUnsafe(MemorySegment event) {
-            final var type = MemoryAccess.getIntAtOffset(event, LAYOUT.byteOffset(MemoryLayout.PathElement.groupElement("type")));
+            final var type = MemoryAccess.getIntAtOffset(event, TYPE_OFFSET);
             return switch (type) {
                 case 0 -> new None(event);
                 case 1 -> new Connect(event);
@@ -501,7 +759,7 @@ public final class Enet {
             }
 
 
-            public String dataAsString() {
+            public byte[] data() {
                 MemoryAddress packet = MemoryAccess.getAddressAtOffset(
                         this.event,
                         LAYOUT.byteOffset(
@@ -530,12 +788,11 @@ public final class Enet {
                         MemoryLayout.ofSequence(packetLength, C_CHAR).byteSize()
                 );
 
-                byte[] data = new byte[(int) packetLength];
-                for (int i = 0; i < packetLength; i++) {
-                    data[i] = MemoryAccess.getByteAtOffset(packetDataArray, C_CHAR.byteSize() * i);
-                }
+                return packetDataArray.toByteArray();
+            }
 
-                return new String(data, StandardCharsets.US_ASCII);
+            public String dataAsString() {
+                return new String(this.data(), StandardCharsets.US_ASCII);
             }
 
             public Peer peer() {
@@ -551,6 +808,14 @@ public final class Enet {
             private Disconnect(MemorySegment event) {
                 super(event);
             }
+
+            public Peer peer() {
+                final var peerAddr = MemoryAccess.getAddressAtOffset(
+                        this.event,
+                        LAYOUT.byteOffset(MemoryLayout.PathElement.groupElement("peer"))
+                );
+                return Peer.fromUnsafe(peerAddr);
+            }
         }
     }
 
@@ -571,7 +836,7 @@ public final class Enet {
             int bit() {
                 return switch (this) {
                     case RELIABLE -> 0x01;
-                    case UNSEQUENCED -> 0x10;
+                    case UNSEQUENCED -> 0x02;
                 };
             }
         }
@@ -618,7 +883,7 @@ public final class Enet {
     }
 
     public static final class Peer {
-        private static final MemoryLayout LAYOUT = MemoryLayout.ofStruct(
+        static final MemoryLayout LAYOUT = MemoryLayout.ofStruct(
                 MemoryLayout.ofStruct(
                         CLinker.C_POINTER.withName("next"),
                         CLinker.C_POINTER.withName("previous")
@@ -718,6 +983,65 @@ public final class Enet {
                 CLinker.C_LONG.withName("totalWaitingData")
         ).withName("_ENetPeer");
 
+        private static final long DATA_OFFSET = LAYOUT.byteOffset(
+                MemoryLayout.PathElement.groupElement("data")
+        );
+        static final long STATE_OFFSET = LAYOUT.byteOffset(
+                MemoryLayout.PathElement.groupElement("state")
+        );
+
+        /* ENetPeerState */
+        static final int STATE_DISCONNECTED = 0;
+        static final int STATE_ACKNOWLEDGING_CONNECT = 2;
+        static final int STATE_CONNECTED = 5;
+        private static final long WINDOW_SIZE_OFFSET = LAYOUT.byteOffset(
+                MemoryLayout.PathElement.groupElement("windowSize")
+        );
+        private static final long RELIABLE_DATA_IN_TRANSIT_OFFSET = LAYOUT.byteOffset(
+                MemoryLayout.PathElement.groupElement("reliableDataInTransit")
+        );
+        private static final long TOTAL_WAITING_DATA_OFFSET = LAYOUT.byteOffset(
+                MemoryLayout.PathElement.groupElement("totalWaitingData")
+        );
+        private static final long PACKET_DATA_LENGTH_OFFSET = Packet.LAYOUT.byteOffset(
+                MemoryLayout.PathElement.groupElement("dataLength")
+        );
+        private static final long PACKET_FREE_CALLBACK_OFFSET = Packet.LAYOUT.byteOffset(
+                MemoryLayout.PathElement.groupElement("freeCallback")
+        );
+        private static final long PACKET_USER_DATA_OFFSET = Packet.LAYOUT.byteOffset(
+                MemoryLayout.PathElement.groupElement("userData")
+        );
+
+        /**
+         * Set as the free callback of every packet we send, so that the peer's data field always holds the number of
+         * bytes libenet is still keeping around for it.
+         */
+        private static final MemorySegment PACKET_FREED = packetFreedStub();
+
+        private static MemorySegment packetFreedStub() {
+            try {
+                return CLinker.getInstance().upcallStub(
+                        MethodHandles.lookup().findStatic(
+                                Peer.class,
+                                "packetFreed",
+                                MethodType.methodType(void.class, MemoryAddress.class)
+                        ),
+                        FunctionDescriptor.ofVoid(C_POINTER)
+                );
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        }
+
+        private static void packetFreed(MemoryAddress packetPtr) {
+            final var packet = packetPtr.asSegmentRestricted(Packet.LAYOUT.byteSize());
+            final var peerPtr = MemoryAccess.getAddressAtOffset(packet, PACKET_USER_DATA_OFFSET);
+            if (!peerPtr.equals(MemoryAddress.NULL)) {
+                new Peer(peerPtr).addQueuedData(-MemoryAccess.getLongAtOffset(packet, PACKET_DATA_LENGTH_OFFSET));
+            }
+        }
+
         private final MemoryAddress peerPtr;
 
         private Peer(MemoryAddress peerPtr) {
@@ -728,6 +1052,19 @@ public final class Enet {
             return new Peer(peerPtr);
         }
 
+        /**
+         * The index of this peer in its host's peer array. Unlike {@link #connectID()}, which libenet zeroes before
+         * a disconnect event is dispatched, this stays put until the slot is handed to a new connection.
+         */
+        public short incomingPeerID() {
+            return MemoryAccess.getShortAtOffset(
+                    this.peerPtr.asSegmentRestricted(LAYOUT.byteSize()),
+                    LAYOUT.byteOffset(
+                            MemoryLayout.PathElement.groupElement("incomingPeerID")
+                    )
+            );
+        }
+
         public int connectID() {
             return MemoryAccess.getIntAtOffset(
                     this.peerPtr.asSegmentRestricted(LAYOUT.byteSize()),
@@ -756,25 +1093,142 @@ public final class Enet {
             );
         }
 
+        /**
+         * Bytes of reliable data sent to this peer that it has yet to acknowledge.
+         */
+        public int reliableDataInTransit() {
+            return MemoryAccess.getIntAtOffset(
+                    this.peerPtr.asSegmentRestricted(LAYOUT.byteSize()),
+                    RELIABLE_DATA_IN_TRANSIT_OFFSET
+            );
+        }
+
+        /**
+         * How much reliable data libenet will have in transit to this peer at once. Anything sent beyond that
+         * waits in the peer's outgoing queue.
+         */
+        public int windowSize() {
+            return MemoryAccess.getIntAtOffset(
+                    this.peerPtr.asSegmentRestricted(LAYOUT.byteSize()),
+                    WINDOW_SIZE_OFFSET
+            );
+        }
+
+        /**
+         * Bytes received from this peer that are buffered waiting to be dispatched, bounded by the host's
+         * maximum waiting data.
+         */
+        public long totalWaitingData() {
+            return MemoryAccess.getLongAtOffset(
+                    this.peerPtr.asSegmentRestricted(LAYOUT.byteSize()),
+                    TOTAL_WAITING_DATA_OFFSET
+            );
+        }
+
+        /**
+         * Bytes sent to this peer that libenet is still holding on to, whether queued, in transit or waiting on an
+         * acknowledgement. libenet keeps no such count itself, so it lives in the peer's otherwise unused
+         * application data field and is maintained by the free callback of each packet.
+         */
+        public long queuedData() {
+            return MemoryAccess.getLongAtOffset(
+                    this.peerPtr.asSegmentRestricted(LAYOUT.byteSize()),
+                    DATA_OFFSET
+            );
+        }
+
+        private void addQueuedData(long delta) {
+            final var segment = this.peerPtr.asSegmentRestricted(LAYOUT.byteSize());
+            MemoryAccess.setLongAtOffset(segment, DATA_OFFSET, MemoryAccess.getLongAtOffset(segment, DATA_OFFSET) + delta);
+        }
+
+        /**
+         * Asks the peer to disconnect. A disconnect event follows once it acknowledges, or once it times out.
+         */
+        public void disconnect(int data) {
+            if (this.isDetached()) {
+                return;
+            }
+            try {
+                ENET_PEER_DISCONNECT.invoke(this.peerPtr, data);
+            } catch (Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+        }
+
+        /**
+         * Disconnects once everything already queued for the peer has been sent and acknowledged. A disconnect event
+         * follows, as with {@link #disconnect(int)}.
+         */
+        public void disconnectLater(int data) {
+            if (this.isDetached()) {
+                return;
+            }
+            try {
+                ENET_PEER_DISCONNECT_LATER.invoke(this.peerPtr, data);
+            } catch (Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+        }
+
+        /**
+         * Disconnects straight away, without waiting for the peer to acknowledge. No disconnect event follows.
+         */
+        void disconnectNow(int data) {
+            if (this.isDetached()) {
+                return;
+            }
+            try {
+                ENET_PEER_DISCONNECT_NOW.invoke(this.peerPtr, data);
+            } catch (Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+        }
+
+        /**
+         * Whether this peer belongs to a live host. Peers rebuilt by {@link TrafficReplay} are detached and
+         * silently drop anything sent to them.
+         */
+        boolean isDetached() {
+            return MemoryAccess.getAddressAtOffset(
+                    this.peerPtr.asSegmentRestricted(LAYOUT.byteSize()),
+                    LAYOUT.byteOffset(MemoryLayout.PathElement.groupElement("host"))
+            ).equals(MemoryAddress.NULL);
+        }
+
         public boolean send(Packet packet) {
-            final var bitFlags = packet.flags()
+            final var bitFlags = packet.flags
                     .stream()
-                    .reduce(0, (a, b) -> a & b.bit(), (a, b) -> a & b);
-            final var data = packet.data();
+                    .reduce(0, (a, b) -> a | b.bit(), (a, b) -> a | b);
+            return this.send(packet.data, bitFlags);
+        }
+
+        /**
+         * Sends without going through {@link Packet}, which would otherwise copy the data on the way in.
+         */
+        boolean send(byte[] data, int bitFlags) {
+            if (this.isDetached()) {
+                return false;
+            }
             try (final var buffer = MemorySegment.allocateNative(MemoryLayout.ofSequence(data.length, C_CHAR))) {
-                for (int i = 0; i < data.length; i++) {
-                    MemoryAccess.setByteAtOffset(buffer,i * C_CHAR.byteSize(), data[i]);
-                }
+                buffer.copyFrom(MemorySegment.ofArray(data));
                 final var packetPtr = (MemoryAddress) ENET_PACKET_CREATE.invoke(buffer.address(), data.length, bitFlags);
-                int status = (int) ENET_PEER_SEND.invoke(this.peerPtr, 0, packetPtr);
-                return status >= 0;
+                final var packet = packetPtr.asSegmentRestricted(Packet.LAYOUT.byteSize());
+                MemoryAccess.setAddressAtOffset(packet, PACKET_FREE_CALLBACK_OFFSET, PACKET_FREED.address());
+                MemoryAccess.setAddressAtOffset(packet, PACKET_USER_DATA_OFFSET, this.peerPtr);
+                this.addQueuedData(data.length);
+                int status = (int) ENET_PEER_SEND.invoke(this.peerPtr, (byte) 0, packetPtr);
+                if (status < 0) {
+                    // libenet leaves a packet it refused to the caller. Destroying it also undoes the count above.
+                    ENET_PACKET_DESTROY.invoke(packetPtr);
+                    return false;
+                }
+                return true;
             } catch (Throwable throwable) {
                 throw new RuntimeException(throwable);
             }
         }
 
-        // TODO: Provide stable identity for connections. For now you can decide to use connectID & address if you need something.
-
         @Override
         public boolean equals(Object o) {
             return o instanceof Peer && this.peerPtr.equals(((Peer) o).peerPtr);
@@ -0,0 +1,63 @@
+package growtopia.enet;
+
+import growtopia.transport.Connection;
+import growtopia.transport.Delivery;
+
+/**
+ * A {@link Connection} backed by a libenet peer. Lives from the connect event to the disconnect event.
+ */
+final class EnetConnection implements Connection {
+    private final long id;
+    private final Enet.Peer peer;
+    private boolean open = true;
+
+    EnetConnection(long id, Enet.Peer peer) {
+        this.id = id;
+        this.peer = peer;
+    }
+
+    Enet.Peer peer() {
+        return this.peer;
+    }
+
+    void close() {
+        this.open = false;
+    }
+
+    @Override
+    public long id() {
+        return this.id;
+    }
+
+    @Override
+    public boolean send(byte[] data, Delivery delivery) {
+        if (!this.open) {
+            return false;
+        }
+        return this.peer.send(data, switch (delivery) {
+            case RELIABLE -> Enet.Packet.Flag.RELIABLE.bit();
+            case UNRELIABLE -> 0;
+            case UNSEQUENCED -> Enet.Packet.Flag.UNSEQUENCED.bit();
+        });
+    }
+
+    @Override
+    public long pendingData() {
+        return this.open ? this.peer.queuedData() : 0;
+    }
+
+    @Override
+    public void disconnect() {
+        if (this.open) {
+            this.peer.disconnect(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EnetConnection[" +
+                "id=" + this.id +
+                ", peer=" + this.peer +
+                ']';
+    }
+}
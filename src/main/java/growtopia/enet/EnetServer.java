@@ -1,25 +1,191 @@
 package growtopia.enet;
 
+import growtopia.enet.codec.ChecksumPolicy;
+import growtopia.enet.codec.CodecStats;
+import growtopia.enet.codec.CompressionPolicy;
+import growtopia.enet.nio.NioHost;
+import growtopia.transport.ConnectionHandler;
+import growtopia.transport.Transport;
+
 import static growtopia.enet.Enet.enet_deinitialize;
 import static growtopia.enet.Enet.enet_initialize;
 
-public final class EnetServer {
-    private EnetServer() {}
+public final class EnetServer implements Transport {
+    public static final short DEFAULT_PORT = 17091;
+
+    /**
+     * The most peers the protocol can address. Slots are cheap, and connections waiting to be admitted need one
+     * too, so there is little reason to run with fewer.
+     */
+    public static final long MAXIMUM_PEER_COUNT = 4095;
+    public static final long DEFAULT_MAXIMUM_WAITING_DATA = 32 * 1024 * 1024;
+
+    /**
+     * Which implementation of the protocol speaks to clients. Both are wire compatible with the game client.
+     */
+    public enum Engine {
+        /**
+         * libenet, called through the foreign linker.
+         */
+        NATIVE,
+        /**
+         * The pure Java implementation in {@link growtopia.enet.nio}.
+         */
+        JAVA
+    }
+
+    private final short port;
+    private final long peerCount;
+    private final long channelLimit;
+    private final Engine engine;
+    private final long maximumWaitingData;
+    private final CompressionPolicy compression;
+    private final ChecksumPolicy checksum;
+    private volatile CodecStats codecStats;
+    private volatile Runnable stopHost;
+    private volatile boolean stopRequested;
+
+    public EnetServer(short port,
+                      long peerCount,
+                      long channelLimit,
+                      Engine engine,
+                      long maximumWaitingData,
+                      CompressionPolicy compression,
+                      ChecksumPolicy checksum) {
+        this.port = port;
+        this.peerCount = peerCount;
+        this.channelLimit = channelLimit;
+        this.engine = engine;
+        this.maximumWaitingData = maximumWaitingData;
+        this.compression = compression;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Compresses with the range coder and checksums with CRC32, which is what the game client expects, using
+     * libenet's own where the engine is libenet.
+     */
+    public EnetServer(short port, long peerCount, long channelLimit, Engine engine, long maximumWaitingData) {
+        this(
+                port,
+                peerCount,
+                channelLimit,
+                engine,
+                maximumWaitingData,
+                CompressionPolicy.NATIVE,
+                ChecksumPolicy.NATIVE
+        );
+    }
+
+    public EnetServer(short port, long peerCount, long channelLimit, Engine engine) {
+        this(port, peerCount, channelLimit, engine, DEFAULT_MAXIMUM_WAITING_DATA);
+    }
+
+    public EnetServer(short port, long peerCount, long channelLimit) {
+        this(port, peerCount, channelLimit, Engine.NATIVE);
+    }
+
+    public EnetServer(Engine engine) {
+        this(DEFAULT_PORT, MAXIMUM_PEER_COUNT, 10, engine);
+    }
+
+    public EnetServer() {
+        this(Engine.NATIVE);
+    }
 
     public static void start(EventHandler eventHandler) {
+        new EnetServer().listen(eventHandler);
+    }
+
+    /**
+     * What compression and checksums have cost and saved the running host, or null if it hasn't started.
+     */
+    public CodecStats codecStats() {
+        return this.codecStats;
+    }
+
+    /**
+     * Remembers how to stop the host that just started, and stops it straight away if a stop came in first.
+     */
+    private void started(Runnable stopHost) {
+        this.stopHost = stopHost;
+        if (this.stopRequested) {
+            stopHost.run();
+        }
+    }
+
+    /**
+     * A stop that comes in before the host has started stops it as soon as it does. Once {@link #run} or
+     * {@link #listen} has returned the stop is spent, and the server can be started again.
+     */
+    @Override
+    public void stop() {
+        this.stopRequested = true;
+        final var stopHost = this.stopHost;
+        if (stopHost != null) {
+            stopHost.run();
+        }
+    }
+
+    /**
+     * Only libenet produces {@link Enet.Event}s, so this uses the native engine whichever one the server was created
+     * with.
+     */
+    public void listen(EventHandler eventHandler) {
         enet_initialize();
         try (final var host = Enet.Host.create(
-                new Enet.Address(0, (short) 17091),
-                1024,
-                10,
+                new Enet.Address(0, this.port),
+                this.peerCount,
+                this.channelLimit,
                 0,
                 0
         )) {
-            host.setChecksumCallbackToCRC32();
-            host.compressWithRangeCoder();
+            if (this.checksum == ChecksumPolicy.NATIVE) {
+                host.setChecksumCallbackToCRC32();
+            }
+            else {
+                host.setChecksum(this.checksum.create());
+            }
+            if (this.compression == CompressionPolicy.NATIVE) {
+                host.compressWithRangeCoder();
+            }
+            else {
+                host.setCompressor(this.compression.create());
+            }
+            host.setMaximumWaitingData(this.maximumWaitingData);
+            this.codecStats = host.codecStats();
+            this.started(host::stop);
             host.listenForEvents(eventHandler);
         } finally {
+            this.stopHost = null;
+            this.stopRequested = false;
             enet_deinitialize();
         }
     }
+
+    @Override
+    public void run(ConnectionHandler handler) {
+        switch (this.engine) {
+            case NATIVE -> this.listen(new ConnectionEventHandler(handler));
+            case JAVA -> {
+                try (final var host = NioHost.create(
+                        new Enet.Address(0, this.port),
+                        this.peerCount,
+                        this.channelLimit,
+                        0,
+                        0
+                )) {
+                    host.setChecksum(this.checksum.create());
+                    host.setCompressor(this.compression.create());
+                    host.setMaximumWaitingData(this.maximumWaitingData);
+                    this.codecStats = host.codecStats();
+                    this.started(host::stop);
+                    host.listenForEvents(handler);
+                } finally {
+                    this.stopHost = null;
+                    this.stopRequested = false;
+                }
+            }
+        }
+    }
 }
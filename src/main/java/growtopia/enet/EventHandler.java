@@ -4,4 +4,14 @@ public interface EventHandler {
     void onReceive(Enet.Event.Receive receiveEvent);
     void onConnect(Enet.Event.Connect connectEvent);
     void onDisconnect(Enet.Event.Disconnect disconnectEvent);
+
+    /**
+     * Called between events when there is nothing to handle, and at least every few milliseconds while busy.
+     */
+    default void onIdle() {}
+
+    /**
+     * Called once when the host has been asked to stop, before it disconnects its peers.
+     */
+    default void onStop() {}
 }
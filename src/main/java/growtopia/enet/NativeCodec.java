@@ -0,0 +1,234 @@
+package growtopia.enet;
+
+import growtopia.enet.codec.CodecStats;
+import growtopia.enet.codec.Compressor;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+import jdk.incubator.foreign.*;
+
+import static jdk.incubator.foreign.CLinker.*;
+
+/**
+ * Lets libenet compress and checksum a host's datagrams with a Java {@link Compressor} and {@link Checksum}.
+ *
+ * Each instance owns upcall stubs bound to itself, which {@link Enet.Host} stores in its {@code compressor} struct
+ * and {@code checksum} field, along with a small allocation to stand in as the compressor's context. libenet hands
+ * the stubs its datagram buffers; they are copied into arrays the Java side can work on and the results copied
+ * back. Every call is timed into the host's {@link CodecStats}.
+ *
+ * libenet can't cope with an exception coming back from an upcall, so failures are reported the way libenet's
+ * own callbacks report them: a compressed or decompressed size of 0.
+ */
+final class NativeCodec implements AutoCloseable {
+    /**
+     * ENET_PROTOCOL_MAXIMUM_MTU, the most any datagram can hold.
+     */
+    private static final int MAXIMUM_MTU = 4096;
+
+    private static final MemoryLayout BUFFER_LAYOUT = MemoryLayout.ofStruct(
+            C_POINTER.withName("data"),
+            C_LONG.withName("dataLength")
+    );
+    private static final long BUFFER_DATA_OFFSET = BUFFER_LAYOUT.byteOffset(
+            MemoryLayout.PathElement.groupElement("data")
+    );
+    private static final long BUFFER_DATA_LENGTH_OFFSET = BUFFER_LAYOUT.byteOffset(
+            MemoryLayout.PathElement.groupElement("dataLength")
+    );
+
+    /**
+     * libenet copies the checksum into the header as is, and expects it in network byte order.
+     */
+    private static final boolean SWAP_CHECKSUM = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final CodecStats stats;
+    private final MemorySegment context = MemorySegment.allocateNative(C_POINTER);
+    private final MemorySegment compressStub;
+    private final MemorySegment decompressStub;
+    private final MemorySegment checksumStub;
+    private final byte[] in = new byte[MAXIMUM_MTU];
+    private final byte[] out = new byte[MAXIMUM_MTU];
+    Compressor compressor;
+    Checksum checksum;
+
+    NativeCodec(CodecStats stats) {
+        this.stats = stats;
+        try {
+            final var lookup = MethodHandles.lookup();
+            this.compressStub = CLinker.getInstance().upcallStub(
+                    lookup.findVirtual(
+                            NativeCodec.class,
+                            "onCompress",
+                            MethodType.methodType(
+                                    long.class,
+                                    MemoryAddress.class,
+                                    MemoryAddress.class,
+                                    long.class,
+                                    long.class,
+                                    MemoryAddress.class,
+                                    long.class
+                            )
+                    ).bindTo(this),
+                    FunctionDescriptor.of(C_LONG, C_POINTER, C_POINTER, C_LONG, C_LONG, C_POINTER, C_LONG)
+            );
+            this.decompressStub = CLinker.getInstance().upcallStub(
+                    lookup.findVirtual(
+                            NativeCodec.class,
+                            "onDecompress",
+                            MethodType.methodType(
+                                    long.class,
+                                    MemoryAddress.class,
+                                    MemoryAddress.class,
+                                    long.class,
+                                    MemoryAddress.class,
+                                    long.class
+                            )
+                    ).bindTo(this),
+                    FunctionDescriptor.of(C_LONG, C_POINTER, C_POINTER, C_LONG, C_POINTER, C_LONG)
+            );
+            this.checksumStub = CLinker.getInstance().upcallStub(
+                    lookup.findVirtual(
+                            NativeCodec.class,
+                            "onChecksum",
+                            MethodType.methodType(int.class, MemoryAddress.class, long.class)
+                    ).bindTo(this),
+                    FunctionDescriptor.of(C_INT, C_POINTER, C_LONG)
+            );
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * libenet only compresses when the compressor's context is set. The stubs don't use it, but it can't be null.
+     */
+    MemoryAddress context() {
+        return this.context.address();
+    }
+
+    MemoryAddress compressFunction() {
+        return this.compressStub.address();
+    }
+
+    MemoryAddress decompressFunction() {
+        return this.decompressStub.address();
+    }
+
+    MemoryAddress checksumFunction() {
+        return this.checksumStub.address();
+    }
+
+    /**
+     * size_t compress(void* context, const ENetBuffer* inBuffers, size_t inBufferCount, size_t inLimit,
+     * enet_uint8* outData, size_t outLimit)
+     */
+    private long onCompress(MemoryAddress context,
+                            MemoryAddress inBuffers,
+                            long inBufferCount,
+                            long inLimit,
+                            MemoryAddress outData,
+                            long outLimit) {
+        try {
+            if (inLimit > MAXIMUM_MTU) {
+                return 0;
+            }
+            final var buffers = inBuffers.asSegmentRestricted(inBufferCount * BUFFER_LAYOUT.byteSize());
+            final var inSegment = MemorySegment.ofArray(this.in);
+            var length = 0L;
+            for (var i = 0L; i < inBufferCount && length < inLimit; i++) {
+                final var buffer = i * BUFFER_LAYOUT.byteSize();
+                final var dataLength = Math.min(
+                        MemoryAccess.getLongAtOffset(buffers, buffer + BUFFER_DATA_LENGTH_OFFSET),
+                        inLimit - length
+                );
+                inSegment.asSlice(length, dataLength).copyFrom(
+                        MemoryAccess.getAddressAtOffset(buffers, buffer + BUFFER_DATA_OFFSET)
+                                .asSegmentRestricted(dataLength)
+                );
+                length += dataLength;
+            }
+
+            final var started = System.nanoTime();
+            final var compressedSize = this.compressor.compress(
+                    this.in, 0, (int) length,
+                    this.out, 0, (int) Math.min(outLimit, MAXIMUM_MTU)
+            );
+            this.stats.recordCompress((int) length, compressedSize, System.nanoTime() - started);
+            if (compressedSize > 0) {
+                outData.asSegmentRestricted(compressedSize)
+                        .copyFrom(MemorySegment.ofArray(this.out).asSlice(0, compressedSize));
+            }
+            return compressedSize;
+        } catch (Throwable t) {
+            return 0;
+        }
+    }
+
+    /**
+     * size_t decompress(void* context, const enet_uint8* inData, size_t inLimit, enet_uint8* outData,
+     * size_t outLimit)
+     */
+    private long onDecompress(MemoryAddress context,
+                              MemoryAddress inData,
+                              long inLimit,
+                              MemoryAddress outData,
+                              long outLimit) {
+        try {
+            if (inLimit <= 0 || inLimit > MAXIMUM_MTU) {
+                return 0;
+            }
+            MemorySegment.ofArray(this.in).asSlice(0, inLimit).copyFrom(inData.asSegmentRestricted(inLimit));
+
+            final var started = System.nanoTime();
+            final var originalSize = this.compressor.decompress(
+                    this.in, 0, (int) inLimit,
+                    this.out, 0, (int) Math.min(outLimit, MAXIMUM_MTU)
+            );
+            this.stats.recordDecompress((int) inLimit, originalSize, System.nanoTime() - started);
+            if (originalSize > 0) {
+                outData.asSegmentRestricted(originalSize)
+                        .copyFrom(MemorySegment.ofArray(this.out).asSlice(0, originalSize));
+            }
+            return originalSize;
+        } catch (Throwable t) {
+            return 0;
+        }
+    }
+
+    /**
+     * enet_uint32 checksum(const ENetBuffer* buffers, size_t bufferCount)
+     */
+    private int onChecksum(MemoryAddress buffers, long bufferCount) {
+        try {
+            final var started = System.nanoTime();
+            final var segment = buffers.asSegmentRestricted(bufferCount * BUFFER_LAYOUT.byteSize());
+            var length = 0L;
+            this.checksum.reset();
+            for (var i = 0L; i < bufferCount; i++) {
+                final var buffer = i * BUFFER_LAYOUT.byteSize();
+                final var dataLength = MemoryAccess.getLongAtOffset(segment, buffer + BUFFER_DATA_LENGTH_OFFSET);
+                this.checksum.update(
+                        MemoryAccess.getAddressAtOffset(segment, buffer + BUFFER_DATA_OFFSET)
+                                .asSegmentRestricted(dataLength)
+                                .asByteBuffer()
+                );
+                length += dataLength;
+            }
+            final var value = (int) this.checksum.getValue();
+            this.stats.recordChecksum(length, System.nanoTime() - started);
+            return SWAP_CHECKSUM ? Integer.reverseBytes(value) : value;
+        } catch (Throwable t) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        this.context.close();
+        this.compressStub.close();
+        this.decompressStub.close();
+        this.checksumStub.close();
+    }
+}
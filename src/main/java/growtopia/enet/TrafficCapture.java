@@ -0,0 +1,108 @@
+package growtopia.enet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records every event seen by {@link Enet.Host#listenForEvents(EventHandler)} to a memory mapped log before
+ * handing it on to the wrapped handler. The log can be fed back through any handler with {@link TrafficReplay}.
+ *
+ * Not thread safe - like the handler it wraps, it expects to be driven from the service thread.
+ */
+public final class TrafficCapture implements EventHandler, AutoCloseable {
+    private final EventHandler delegate;
+    private final FileChannel channel;
+    private final TrafficLog.Window window;
+    private final long startNanos;
+    private long position;
+
+    private TrafficCapture(EventHandler delegate, FileChannel channel) {
+        this.delegate = delegate;
+        this.channel = channel;
+        this.window = new TrafficLog.Window(channel, FileChannel.MapMode.READ_WRITE);
+        this.startNanos = System.nanoTime();
+
+        final var header = this.window.at(0, TrafficLog.HEADER_SIZE);
+        header.putInt(TrafficLog.MAGIC);
+        header.putShort(TrafficLog.VERSION);
+        header.putShort((short) 0);
+        header.putLong(System.currentTimeMillis());
+        this.position = TrafficLog.HEADER_SIZE;
+    }
+
+    public static TrafficCapture open(Path file, EventHandler delegate) {
+        try {
+            return new TrafficCapture(delegate, FileChannel.open(
+                    file,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE
+            ));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void record(byte type, Enet.Peer peer, byte[] data) {
+        final var dataLength = data == null ? 0 : data.length;
+        final var length = TrafficLog.RECORD_HEADER_SIZE + dataLength;
+        final var address = peer.address();
+
+        final var buffer = this.window.at(this.position, length);
+        buffer.put(type);
+        buffer.putLong(System.nanoTime() - this.startNanos);
+        buffer.putShort(peer.incomingPeerID());
+        buffer.putInt(peer.connectID());
+        buffer.putInt(address.host());
+        buffer.putShort(address.port());
+        buffer.putInt(dataLength);
+        if (data != null) {
+            buffer.put(data);
+        }
+        this.position += length;
+    }
+
+    @Override
+    public void onReceive(Enet.Event.Receive receiveEvent) {
+        this.record(TrafficLog.RECEIVE, receiveEvent.peer(), receiveEvent.data());
+        this.delegate.onReceive(receiveEvent);
+    }
+
+    @Override
+    public void onConnect(Enet.Event.Connect connectEvent) {
+        this.record(TrafficLog.CONNECT, connectEvent.peer(), null);
+        this.delegate.onConnect(connectEvent);
+    }
+
+    @Override
+    public void onDisconnect(Enet.Event.Disconnect disconnectEvent) {
+        this.record(TrafficLog.DISCONNECT, disconnectEvent.peer(), null);
+        this.delegate.onDisconnect(disconnectEvent);
+    }
+
+    @Override
+    public void onIdle() {
+        this.delegate.onIdle();
+    }
+
+    @Override
+    public void onStop() {
+        this.delegate.onStop();
+    }
+
+    /**
+     * Trims the mapped slack off the end of the log.
+     */
+    @Override
+    public void close() {
+        try (this.channel) {
+            this.channel.truncate(this.position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
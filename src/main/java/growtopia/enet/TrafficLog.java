@@ -0,0 +1,86 @@
+package growtopia.enet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * On-disk format shared by {@link TrafficCapture} and {@link TrafficReplay}.
+ *
+ * <pre>
+ * header: int magic, short version, short reserved, long captureStartEpochMillis
+ * record: byte type, long nanosSinceStart, short incomingPeerID, int connectID, int host, short port,
+ *         int dataLength, byte[dataLength]
+ * </pre>
+ *
+ * Peers are identified by their slot in the host rather than by connectID, since libenet has already zeroed the
+ * connectID by the time a disconnect is seen. Everything is little endian. A record type of zero marks the end of
+ * the log, which is also what the unwritten tail of a log looks like if the capturing process died before it could
+ * truncate the file.
+ */
+final class TrafficLog {
+    private TrafficLog() {}
+
+    static final int MAGIC = 0x50435447; // "GTCP"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 1 + 8 + 2 + 4 + 4 + 2 + 4;
+
+    // Record types share their values with ENetEventType so they can be written straight into an event struct.
+    static final byte END = 0;
+    static final byte CONNECT = 1;
+    static final byte DISCONNECT = 2;
+    static final byte RECEIVE = 3;
+
+    /**
+     * Files are mapped a window at a time so that logs can grow past what a single
+     * {@link MappedByteBuffer} can address.
+     */
+    static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * A sliding mapped window over a log file, addressed by absolute file position.
+     */
+    static final class Window {
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private MappedByteBuffer buffer;
+        private long windowStart;
+
+        Window(FileChannel channel, FileChannel.MapMode mode) {
+            this.channel = channel;
+            this.mode = mode;
+            this.windowStart = 0;
+            this.buffer = null;
+        }
+
+        /**
+         * Makes sure the {@code length} bytes starting at {@code position} are mapped, returning the buffer
+         * with its position set accordingly. Returns null when reading and the file is too short.
+         */
+        MappedByteBuffer at(long position, int length) {
+            try {
+                if (this.buffer == null
+                        || position < this.windowStart
+                        || position + length > this.windowStart + this.buffer.capacity()) {
+                    long size = Math.max(WINDOW_SIZE, length);
+                    if (this.mode == FileChannel.MapMode.READ_ONLY) {
+                        size = Math.min(size, this.channel.size() - position);
+                        if (size < length) {
+                            return null;
+                        }
+                    }
+                    this.buffer = this.channel.map(this.mode, position, size);
+                    this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+                    this.windowStart = position;
+                }
+                this.buffer.position((int) (position - this.windowStart));
+                return this.buffer;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
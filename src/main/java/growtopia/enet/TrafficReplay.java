@@ -0,0 +1,192 @@
+package growtopia.enet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemoryLayout;
+import jdk.incubator.foreign.MemorySegment;
+
+/**
+ * Feeds a log written by {@link TrafficCapture} back into an {@link EventHandler}.
+ *
+ * Events are rebuilt in native memory with the same layout libenet uses, so handlers see exactly the types they
+ * would see from a live host, but libenet itself is never loaded. The peers handed out are detached from any host
+ * and drop whatever is sent to them.
+ */
+public final class TrafficReplay {
+    private TrafficReplay() {}
+
+    /**
+     * The longest a handler goes without an idle call while waiting for the next event at the original pace.
+     */
+    private static final long IDLE_INTERVAL_NANOS = 10_000_000L;
+
+    public enum Pace {
+        /**
+         * Reproduce the gaps between events as they were captured.
+         */
+        ORIGINAL,
+        /**
+         * Dispatch every event as soon as the previous one returns.
+         */
+        UNTHROTTLED
+    }
+
+    public record Result(long events, long bytes, long elapsedNanos) {
+        public double eventsPerSecond() {
+            return this.elapsedNanos == 0 ? 0 : this.events * 1_000_000_000.0 / this.elapsedNanos;
+        }
+    }
+
+    public static Result replay(Path file, EventHandler handler, Pace pace) {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return replay(channel, handler, pace);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Result replay(FileChannel channel, EventHandler handler, Pace pace) {
+        final var window = new TrafficLog.Window(channel, FileChannel.MapMode.READ_ONLY);
+        final var header = window.at(0, TrafficLog.HEADER_SIZE);
+        if (header == null || header.getInt() != TrafficLog.MAGIC) {
+            throw new IllegalArgumentException("Not a traffic capture");
+        }
+        final var version = header.getShort();
+        if (version != TrafficLog.VERSION) {
+            throw new IllegalArgumentException("Unsupported traffic capture version " + version);
+        }
+
+        final var peers = new HashMap<Short, MemorySegment>();
+        final var eventSegment = MemorySegment.allocateNative(Enet.Event.LAYOUT);
+        final var packetSegment = MemorySegment.allocateNative(Enet.Packet.LAYOUT);
+        var dataSegment = MemorySegment.allocateNative(4096);
+        long events = 0;
+        long bytes = 0;
+        long position = TrafficLog.HEADER_SIZE;
+        final var startNanos = System.nanoTime();
+
+        try {
+            while (true) {
+                final var record = window.at(position, TrafficLog.RECORD_HEADER_SIZE);
+                if (record == null) {
+                    break;
+                }
+                final var type = record.get();
+                if (type == TrafficLog.END) {
+                    break;
+                }
+                final var timestamp = record.getLong();
+                final var incomingPeerID = record.getShort();
+                final var connectID = record.getInt();
+                final var host = record.getInt();
+                final var port = record.getShort();
+                final var dataLength = record.getInt();
+                position += TrafficLog.RECORD_HEADER_SIZE;
+
+                var packet = MemoryAddress.NULL;
+                if (type == TrafficLog.RECEIVE) {
+                    if (dataSegment.byteSize() < dataLength) {
+                        final var size = Math.max(dataLength, dataSegment.byteSize() * 2);
+                        dataSegment.close();
+                        dataSegment = MemorySegment.allocateNative(size);
+                    }
+                    final var data = window.at(position, dataLength);
+                    if (data == null) {
+                        break;
+                    }
+                    dataSegment.asByteBuffer().put(data.slice().limit(dataLength));
+                    position += dataLength;
+                    bytes += dataLength;
+
+                    setLong(packetSegment, Enet.Packet.LAYOUT, "referenceCount", 1);
+                    setLong(packetSegment, Enet.Packet.LAYOUT, "dataLength", dataLength);
+                    setAddress(packetSegment, Enet.Packet.LAYOUT, "data", dataSegment.address());
+                    packet = packetSegment.address();
+                }
+
+                final var peer = peers.computeIfAbsent(
+                        incomingPeerID,
+                        id -> detachedPeer(id, connectID, host, port)
+                );
+                MemoryAccess.setIntAtOffset(eventSegment, offset(Enet.Event.LAYOUT, "type"), type);
+                setAddress(eventSegment, Enet.Event.LAYOUT, "peer", peer.address());
+                setAddress(eventSegment, Enet.Event.LAYOUT, "packet", packet);
+
+                if (pace == Pace.ORIGINAL) {
+                    long wait;
+                    while ((wait = startNanos + timestamp - System.nanoTime()) > 0) {
+                        handler.onIdle();
+                        LockSupport.parkNanos(Math.min(wait, IDLE_INTERVAL_NANOS));
+                    }
+                }
+
+                final var ev = Enet.Event.fromUnsafe(eventSegment);
+                if (ev instanceof Enet.Event.Receive) {
+                    handler.onReceive((Enet.Event.Receive) ev);
+                }
+                else if (ev instanceof Enet.Event.Connect) {
+                    handler.onConnect((Enet.Event.Connect) ev);
+                }
+                else if (ev instanceof Enet.Event.Disconnect) {
+                    handler.onDisconnect((Enet.Event.Disconnect) ev);
+                    peers.remove(incomingPeerID).close();
+                }
+                events++;
+            }
+        } finally {
+            peers.values().forEach(MemorySegment::close);
+            dataSegment.close();
+            packetSegment.close();
+            eventSegment.close();
+        }
+
+        return new Result(events, bytes, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * A zeroed peer struct carrying only what was captured. Its host pointer is null, which is what marks it as
+     * detached.
+     */
+    private static MemorySegment detachedPeer(short incomingPeerID, int connectID, int host, short port) {
+        final var peer = MemorySegment.allocateNative(Enet.Peer.LAYOUT);
+        peer.fill((byte) 0);
+        MemoryAccess.setShortAtOffset(peer, offset(Enet.Peer.LAYOUT, "incomingPeerID"), incomingPeerID);
+        MemoryAccess.setIntAtOffset(peer, offset(Enet.Peer.LAYOUT, "connectID"), connectID);
+        MemoryAccess.setIntAtOffset(
+                peer,
+                Enet.Peer.LAYOUT.byteOffset(
+                        MemoryLayout.PathElement.groupElement("address"),
+                        MemoryLayout.PathElement.groupElement("host")
+                ),
+                host
+        );
+        MemoryAccess.setShortAtOffset(
+                peer,
+                Enet.Peer.LAYOUT.byteOffset(
+                        MemoryLayout.PathElement.groupElement("address"),
+                        MemoryLayout.PathElement.groupElement("port")
+                ),
+                port
+        );
+        return peer;
+    }
+
+    private static long offset(MemoryLayout layout, String field) {
+        return layout.byteOffset(MemoryLayout.PathElement.groupElement(field));
+    }
+
+    private static void setLong(MemorySegment segment, MemoryLayout layout, String field, long value) {
+        MemoryAccess.setLongAtOffset(segment, offset(layout, field), value);
+    }
+
+    private static void setAddress(MemorySegment segment, MemoryLayout layout, String field, MemoryAddress value) {
+        MemoryAccess.setAddressAtOffset(segment, offset(layout, field), value);
+    }
+}
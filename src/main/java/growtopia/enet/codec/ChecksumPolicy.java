@@ -0,0 +1,45 @@
+package growtopia.enet.codec;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
+
+/**
+ * Which checksum a host puts in each datagram header, if any. Each host gets its own instance from
+ * {@code checksums}, which is null when checksums are off.
+ *
+ * Only {@link #NATIVE} and {@link #CRC32} are understood by the game client.
+ */
+public record ChecksumPolicy(String name, Supplier<Checksum> checksums) {
+    public static final ChecksumPolicy NONE = new ChecksumPolicy("none", null);
+
+    /**
+     * libenet's own CRC32, called directly by libenet, where the host is libenet. Hosts that aren't fall back to
+     * {@link java.util.zip.CRC32}. Not measured in {@link CodecStats} on libenet.
+     */
+    public static final ChecksumPolicy NATIVE = new ChecksumPolicy("native", java.util.zip.CRC32::new);
+    public static final ChecksumPolicy CRC32 = new ChecksumPolicy("crc32", java.util.zip.CRC32::new);
+    public static final ChecksumPolicy CRC32C = new ChecksumPolicy("crc32c", java.util.zip.CRC32C::new);
+
+    private static final List<ChecksumPolicy> BUILT_IN = List.of(NONE, NATIVE, CRC32, CRC32C);
+
+    public static ChecksumPolicy named(String name) {
+        for (final var policy : BUILT_IN) {
+            if (policy.name().equals(name)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown checksum policy " + name);
+    }
+
+    public boolean enabled() {
+        return this.checksums != null;
+    }
+
+    /**
+     * A new checksum, or null if checksums are off.
+     */
+    public Checksum create() {
+        return this.checksums == null ? null : this.checksums.get();
+    }
+}
@@ -0,0 +1,118 @@
+package growtopia.enet.codec;
+
+/**
+ * What compression and checksums have cost one host and what compression has saved it.
+ *
+ * Written by the host's service thread. Other threads can read it at any time, but see counters that may lag
+ * slightly behind and may not all be from the same moment.
+ */
+public final class CodecStats {
+    private long compressed;
+    private long compressedBytesIn;
+    private long compressedBytesOut;
+    private long compressNanos;
+    private long decompressed;
+    private long decompressedBytesIn;
+    private long decompressedBytesOut;
+    private long decompressNanos;
+    private long checksummed;
+    private long checksummedBytes;
+    private long checksumNanos;
+
+    /**
+     * Records one compression attempt. An attempt that didn't shrink the datagram, which is sent as it was,
+     * counts as producing {@code inLength} bytes.
+     */
+    public void recordCompress(int inLength, int outLength, long nanos) {
+        this.compressed++;
+        this.compressedBytesIn += inLength;
+        this.compressedBytesOut += outLength > 0 && outLength < inLength ? outLength : inLength;
+        this.compressNanos += nanos;
+    }
+
+    public void recordDecompress(int inLength, int outLength, long nanos) {
+        this.decompressed++;
+        this.decompressedBytesIn += inLength;
+        this.decompressedBytesOut += outLength;
+        this.decompressNanos += nanos;
+    }
+
+    public void recordChecksum(long length, long nanos) {
+        this.checksummed++;
+        this.checksummedBytes += length;
+        this.checksumNanos += nanos;
+    }
+
+    public long compressed() {
+        return this.compressed;
+    }
+
+    public long compressedBytesIn() {
+        return this.compressedBytesIn;
+    }
+
+    public long compressedBytesOut() {
+        return this.compressedBytesOut;
+    }
+
+    public long compressNanos() {
+        return this.compressNanos;
+    }
+
+    public long decompressed() {
+        return this.decompressed;
+    }
+
+    public long decompressedBytesIn() {
+        return this.decompressedBytesIn;
+    }
+
+    public long decompressedBytesOut() {
+        return this.decompressedBytesOut;
+    }
+
+    public long decompressNanos() {
+        return this.decompressNanos;
+    }
+
+    public long checksummed() {
+        return this.checksummed;
+    }
+
+    public long checksummedBytes() {
+        return this.checksummedBytes;
+    }
+
+    public long checksumNanos() {
+        return this.checksumNanos;
+    }
+
+    /**
+     * Bytes sent per byte that would have been sent without compression, so lower is better. 1 before anything has
+     * been compressed.
+     */
+    public double ratio() {
+        return this.compressedBytesIn == 0 ? 1 : (double) this.compressedBytesOut / this.compressedBytesIn;
+    }
+
+    /**
+     * Nanoseconds of compression per byte saved, the price of the bandwidth compression buys.
+     */
+    public double nanosPerByteSaved() {
+        final var saved = this.compressedBytesIn - this.compressedBytesOut;
+        return saved <= 0 ? Double.POSITIVE_INFINITY : (double) this.compressNanos / saved;
+    }
+
+    @Override
+    public String toString() {
+        return "CodecStats[" +
+                "compressed=" + compressed +
+                ", ratio=" + String.format("%.3f", this.ratio()) +
+                ", compressMillis=" + compressNanos / 1_000_000 +
+                ", decompressed=" + decompressed +
+                ", decompressMillis=" + decompressNanos / 1_000_000 +
+                ", checksummed=" + checksummed +
+                ", checksumMillis=" + checksumNanos / 1_000_000 +
+                ']';
+    }
+}
@@ -0,0 +1,49 @@
+package growtopia.enet.codec;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Which {@link Compressor} a host uses, if any. Each host gets its own instance from {@code compressors}, which is
+ * null when compression is off.
+ *
+ * Only {@link #NATIVE} and {@link #RANGE_CODER} are understood by the game client. The others are for links where
+ * both ends are ours.
+ */
+public record CompressionPolicy(String name, Supplier<Compressor> compressors) {
+    public static final CompressionPolicy NONE = new CompressionPolicy("none", null);
+
+    /**
+     * libenet's own range coder, called directly by libenet, where the host is libenet. Hosts that aren't fall back
+     * to {@link RangeCoder}. Not measured in {@link CodecStats} on libenet.
+     */
+    public static final CompressionPolicy NATIVE = new CompressionPolicy("native", RangeCoder::new);
+    public static final CompressionPolicy RANGE_CODER = new CompressionPolicy("range-coder", RangeCoder::new);
+    public static final CompressionPolicy LZ4 = new CompressionPolicy("lz4", Lz4Compressor::new);
+    public static final CompressionPolicy LZ4_GROWTOPIA = new CompressionPolicy(
+            "lz4-growtopia",
+            () -> new Lz4Compressor(Lz4Compressor.GROWTOPIA_DICTIONARY)
+    );
+
+    private static final List<CompressionPolicy> BUILT_IN = List.of(NONE, NATIVE, RANGE_CODER, LZ4, LZ4_GROWTOPIA);
+
+    public static CompressionPolicy named(String name) {
+        for (final var policy : BUILT_IN) {
+            if (policy.name().equals(name)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression policy " + name);
+    }
+
+    public boolean enabled() {
+        return this.compressors != null;
+    }
+
+    /**
+     * A new compressor, or null if compression is off.
+     */
+    public Compressor create() {
+        return this.compressors == null ? null : this.compressors.get();
+    }
+}
@@ -0,0 +1,22 @@
+package growtopia.enet.codec;
+
+/**
+ * Compresses the body of a datagram, everything after the protocol header, on its way out, and decompresses it on
+ * its way in. A host only uses the compressed form when it is smaller.
+ *
+ * Both ends of a connection must use the same compressor. The game client only speaks {@link RangeCoder}.
+ * Implementations may keep working state between calls, and each is used by one host on one thread.
+ */
+public interface Compressor {
+    /**
+     * Compresses {@code inLength} bytes into at most {@code outLimit} bytes of {@code out}. Returns the compressed
+     * size, or 0 if the input was empty or would not fit.
+     */
+    int compress(byte[] in, int inOffset, int inLength, byte[] out, int outOffset, int outLimit);
+
+    /**
+     * Decompresses {@code inLength} bytes into at most {@code outLimit} bytes of {@code out}. Returns the
+     * decompressed size, or 0 if the input was empty, corrupt or too large for the output.
+     */
+    int decompress(byte[] in, int inOffset, int inLength, byte[] out, int outOffset, int outLimit);
+}
@@ -0,0 +1,274 @@
+package growtopia.enet.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A greedy LZ4 block codec, optionally primed with a preset dictionary.
+ *
+ * Datagrams are small, so on their own they rarely repeat enough to compress. A dictionary of text the game sends
+ * over and over gives even the first message of a datagram something to refer back to. The dictionary sits just in
+ * front of the data in a shared window, so matches into it are ordinary LZ4 back references, and the hash table
+ * entries for it are computed once up front. Both ends must use the same dictionary.
+ *
+ * Compression is much cheaper than {@link RangeCoder}, at some cost in ratio. Neither direction allocates.
+ */
+public final class Lz4Compressor implements Compressor {
+    /**
+     * Fragments of the text messages and variant lists the server sends most, least common first so the most
+     * common are the nearest back references.
+     */
+    public static final byte[] GROWTOPIA_DICTIONARY = String.join(
+            "",
+            "OnDialogRequest",
+            "set_default_color|`o\n",
+            "add_label_with_icon|big|",
+            "add_spacer|small|\n",
+            "end_dialog|",
+            "OnTalkBubble",
+            "OnSetBux",
+            "OnRemove",
+            "OnSpawn",
+            "spawn|avatar\nnetID|",
+            "\nuserID|",
+            "\ncolrect|0|0|20|30\nposXY|",
+            "\nname|``",
+            "\ncountry|us\ninvis|0\nmstate|0\nsmstate|0\n",
+            "type|local\n",
+            "OnSendToServer",
+            "requestedName|",
+            "\ntankIDName|",
+            "\ntankIDPass|",
+            "\ngame_version|",
+            "\nplatformID|",
+            "\nprotocol|",
+            "OnRequestWorldSelectMenu",
+            "default|\nadd_button|Showing: `wWorlds``|_catselect_|0.6|3529161471|\n",
+            "add_floater|",
+            "|0.5|3529161471\n",
+            "action|join_request\nname|",
+            "action|quit_to_exit",
+            "OnConsoleMessage",
+            "action|log\nmsg|"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Larger than any datagram.
+     */
+    static final int MAXIMUM_BLOCK_SIZE = 1 << 16;
+
+    private static final int MINIMUM_MATCH = 4;
+    private static final int MAXIMUM_OFFSET = 0xFFFF;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int HASH_BITS = 12;
+    private static final int NONE = -1;
+
+    private final int dictionaryLength;
+    private final byte[] window;
+    private final int[] dictionaryTable = new int[1 << HASH_BITS];
+    private final int[] table = new int[1 << HASH_BITS];
+    private final int[] stamps = new int[1 << HASH_BITS];
+    private int stamp = 0;
+
+    public Lz4Compressor(byte[] dictionary) {
+        if (dictionary.length > MAXIMUM_OFFSET) {
+            throw new IllegalArgumentException("Dictionary is longer than " + MAXIMUM_OFFSET + " bytes");
+        }
+        this.dictionaryLength = dictionary.length;
+        this.window = new byte[dictionary.length + MAXIMUM_BLOCK_SIZE];
+        System.arraycopy(dictionary, 0, this.window, 0, dictionary.length);
+        Arrays.fill(this.dictionaryTable, NONE);
+        for (var position = 0; position + MINIMUM_MATCH <= dictionary.length; position++) {
+            this.dictionaryTable[hash(readInt(this.window, position))] = position;
+        }
+    }
+
+    public Lz4Compressor() {
+        this(new byte[0]);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+                | (data[offset + 1] & 0xFF) << 8
+                | (data[offset + 2] & 0xFF) << 16
+                | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * Writes an LZ4 length continuation, the part of a length past what fits in its token nibble.
+     */
+    private static int writeLength(byte[] out, int position, int length) {
+        while (length >= 255) {
+            out[position++] = (byte) 255;
+            length -= 255;
+        }
+        out[position++] = (byte) length;
+        return position;
+    }
+
+    /**
+     * Writes one sequence, returning the new output position or {@link #NONE} if it would not fit. A match length
+     * of 0 means the literals are the last in the block.
+     */
+    private int writeSequence(int literalStart,
+                              int literalLength,
+                              int offset,
+                              int matchLength,
+                              byte[] out,
+                              int position,
+                              int end) {
+        final var matchExtra = matchLength - MINIMUM_MATCH;
+        final var needed = 1 + literalLength + literalLength / 255 + 1
+                + (matchLength == 0 ? 0 : 2 + matchExtra / 255 + 1);
+        if (position + needed > end) {
+            return NONE;
+        }
+
+        final var token = position++;
+        if (literalLength >= 15) {
+            out[token] = (byte) 0xF0;
+            position = writeLength(out, position, literalLength - 15);
+        }
+        else {
+            out[token] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(this.window, literalStart, out, position, literalLength);
+        position += literalLength;
+
+        if (matchLength == 0) {
+            return position;
+        }
+        out[position++] = (byte) offset;
+        out[position++] = (byte) (offset >>> 8);
+        if (matchExtra >= 15) {
+            out[token] |= 0x0F;
+            position = writeLength(out, position, matchExtra - 15);
+        }
+        else {
+            out[token] |= (byte) matchExtra;
+        }
+        return position;
+    }
+
+    @Override
+    public int compress(byte[] in, int inOffset, int inLength, byte[] out, int outOffset, int outLimit) {
+        if (inLength <= 0 || inLength > MAXIMUM_BLOCK_SIZE) {
+            return 0;
+        }
+        final var window = this.window;
+        System.arraycopy(in, inOffset, window, this.dictionaryLength, inLength);
+        if (++this.stamp == 0) {
+            Arrays.fill(this.stamps, 0);
+            this.stamp = 1;
+        }
+
+        final var end = this.dictionaryLength + inLength;
+        final var matchLimit = end - LAST_LITERALS;
+        final var findLimit = end - MATCH_FIND_LIMIT;
+        final var outEnd = outOffset + outLimit;
+        var position = this.dictionaryLength;
+        var anchor = position;
+        var written = outOffset;
+        while (position < findLimit) {
+            final var sequence = readInt(window, position);
+            final var slot = hash(sequence);
+            final var candidate = this.stamps[slot] == this.stamp ? this.table[slot] : this.dictionaryTable[slot];
+            this.table[slot] = position;
+            this.stamps[slot] = this.stamp;
+            if (candidate == NONE || position - candidate > MAXIMUM_OFFSET || readInt(window, candidate) != sequence) {
+                position++;
+                continue;
+            }
+
+            var length = MINIMUM_MATCH;
+            while (position + length < matchLimit && window[candidate + length] == window[position + length]) {
+                length++;
+            }
+            written = this.writeSequence(anchor, position - anchor, position - candidate, length, out, written, outEnd);
+            if (written == NONE) {
+                return 0;
+            }
+            position += length;
+            anchor = position;
+        }
+
+        written = this.writeSequence(anchor, end - anchor, 0, 0, out, written, outEnd);
+        return written == NONE ? 0 : written - outOffset;
+    }
+
+    @Override
+    public int decompress(byte[] in, int inOffset, int inLength, byte[] out, int outOffset, int outLimit) {
+        if (inLength <= 0) {
+            return 0;
+        }
+        final var window = this.window;
+        final var limit = this.dictionaryLength + Math.min(outLimit, MAXIMUM_BLOCK_SIZE);
+        final var inEnd = inOffset + inLength;
+        var input = inOffset;
+        var position = this.dictionaryLength;
+        while (true) {
+            final var token = in[input++] & 0xFF;
+
+            var literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int next;
+                do {
+                    if (input >= inEnd) {
+                        return 0;
+                    }
+                    next = in[input++] & 0xFF;
+                    literalLength += next;
+                } while (next == 255);
+            }
+            if (literalLength > inEnd - input || literalLength > limit - position) {
+                return 0;
+            }
+            System.arraycopy(in, input, window, position, literalLength);
+            input += literalLength;
+            position += literalLength;
+            if (input == inEnd) {
+                break;
+            }
+
+            if (inEnd - input < 2) {
+                return 0;
+            }
+            final var offset = (in[input] & 0xFF) | (in[input + 1] & 0xFF) << 8;
+            input += 2;
+            if (offset == 0 || offset > position) {
+                return 0;
+            }
+            var matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int next;
+                do {
+                    if (input >= inEnd) {
+                        return 0;
+                    }
+                    next = in[input++] & 0xFF;
+                    matchLength += next;
+                } while (next == 255);
+            }
+            matchLength += MINIMUM_MATCH;
+            if (matchLength > limit - position) {
+                return 0;
+            }
+            // Byte by byte, since a match may overlap the bytes it produces.
+            for (var from = position - offset; matchLength-- > 0; ) {
+                window[position++] = window[from++];
+            }
+            if (input == inEnd) {
+                return 0;
+            }
+        }
+
+        final var length = position - this.dictionaryLength;
+        System.arraycopy(window, this.dictionaryLength, out, outOffset, length);
+        return length;
+    }
+}
@@ -0,0 +1,468 @@
+package growtopia.enet.codec;
+
+/**
+ * A port of libenet's adaptive order-2 PPM range coder (compress.c), bit for bit compatible with
+ * {@code enet_range_coder_compress} and {@code enet_range_coder_decompress}.
+ *
+ * The symbol table is kept as parallel int arrays rather than objects so that neither direction allocates.
+ * Fields that are 8 or 16 bit in libenet are masked wherever libenet would truncate them. An instance holds
+ * working state and must only be used by one thread at a time.
+ */
+public final class RangeCoder implements Compressor {
+    private static final int RANGE_CODER_TOP = 1 << 24;
+    private static final int RANGE_CODER_BOTTOM = 1 << 16;
+    private static final int CONTEXT_SYMBOL_DELTA = 3;
+    private static final int CONTEXT_SYMBOL_MINIMUM = 1;
+    private static final int CONTEXT_ESCAPE_MINIMUM = 1;
+    private static final int SUBCONTEXT_ORDER = 2;
+    private static final int SUBCONTEXT_SYMBOL_DELTA = 2;
+    private static final int SUBCONTEXT_ESCAPE_DELTA = 5;
+    private static final int SYMBOL_COUNT = 4096;
+
+    /**
+     * The root context is always the first symbol created after a reset.
+     */
+    private static final int ROOT = 0;
+
+    private final int[] value = new int[SYMBOL_COUNT];
+    private final int[] count = new int[SYMBOL_COUNT];
+    private final int[] under = new int[SYMBOL_COUNT];
+    private final int[] left = new int[SYMBOL_COUNT];
+    private final int[] right = new int[SYMBOL_COUNT];
+    private final int[] symbols = new int[SYMBOL_COUNT];
+    private final int[] escapes = new int[SYMBOL_COUNT];
+    private final int[] total = new int[SYMBOL_COUNT];
+    private final int[] parent = new int[SYMBOL_COUNT];
+
+    private int nextSymbol;
+    private int predicted;
+    private int order;
+
+    // Results of the last contextEncode/contextDecode.
+    private int resultSymbol;
+    private int resultValue;
+    private int resultUnder;
+    private int resultCount;
+
+    // Range coder registers; unsigned 32 bit in libenet.
+    private int low;
+    private int range;
+    private int code;
+
+    private byte[] data;
+    private int position;
+    private int end;
+
+    public RangeCoder() {}
+
+    private int createSymbol(int value, int count) {
+        final var symbol = this.nextSymbol++;
+        this.value[symbol] = value;
+        this.count[symbol] = count;
+        this.under[symbol] = count;
+        this.left[symbol] = 0;
+        this.right[symbol] = 0;
+        this.symbols[symbol] = 0;
+        this.escapes[symbol] = 0;
+        this.total[symbol] = 0;
+        this.parent[symbol] = 0;
+        return symbol;
+    }
+
+    private void reset() {
+        this.nextSymbol = 0;
+        final var root = this.createSymbol(0, 0);
+        this.escapes[root] = CONTEXT_ESCAPE_MINIMUM;
+        this.total[root] = CONTEXT_ESCAPE_MINIMUM + 256 * CONTEXT_SYMBOL_MINIMUM;
+        this.symbols[root] = 0;
+        this.predicted = 0;
+        this.order = 0;
+    }
+
+    private void freeSymbols() {
+        if (this.nextSymbol >= SYMBOL_COUNT - SUBCONTEXT_ORDER) {
+            this.reset();
+        }
+    }
+
+    private void nextInput() {
+        if (this.order >= SUBCONTEXT_ORDER) {
+            this.predicted = this.parent[this.predicted];
+        }
+        else {
+            this.order++;
+        }
+        this.freeSymbols();
+    }
+
+    /**
+     * Points the parent slot at a symbol. Slot -1 stands for {@code predicted}, which is where libenet's
+     * parent pointer starts out.
+     */
+    private int link(int slot, int symbol) {
+        if (slot < 0) {
+            this.predicted = symbol;
+        }
+        else {
+            this.parent[slot] = symbol;
+        }
+        return symbol;
+    }
+
+    private int rescaleSymbol(int symbol) {
+        var total = 0;
+        while (true) {
+            this.count[symbol] -= this.count[symbol] >> 1;
+            this.under[symbol] = this.count[symbol];
+            if (this.left[symbol] != 0) {
+                this.under[symbol] = (this.under[symbol] + this.rescaleSymbol(symbol + this.left[symbol])) & 0xFFFF;
+            }
+            total += this.under[symbol];
+            if (this.right[symbol] == 0) {
+                break;
+            }
+            symbol += this.right[symbol];
+        }
+        return total & 0xFFFF;
+    }
+
+    private void rescaleContext(int context, int minimum) {
+        var total = this.symbols[context] != 0 ? this.rescaleSymbol(context + this.symbols[context]) : 0;
+        this.escapes[context] -= this.escapes[context] >> 1;
+        total += this.escapes[context] + 256 * minimum;
+        this.total[context] = total & 0xFFFF;
+    }
+
+    private void updateContext(int context, int delta, int minimum, int count) {
+        this.total[context] = (this.total[context] + delta) & 0xFFFF;
+        if (count > 0xFF - 2 * delta + minimum || this.total[context] > RANGE_CODER_BOTTOM - 0x100) {
+            this.rescaleContext(context, minimum);
+        }
+    }
+
+    private void contextEncode(int context, int value, int update, int minimum) {
+        var under = value * minimum;
+        var count = minimum;
+        int symbol;
+        if (this.symbols[context] == 0) {
+            symbol = this.createSymbol(value, update);
+            this.symbols[context] = symbol - context;
+        }
+        else {
+            var node = context + this.symbols[context];
+            while (true) {
+                if (value < this.value[node]) {
+                    this.under[node] = (this.under[node] + update) & 0xFFFF;
+                    if (this.left[node] != 0) {
+                        node += this.left[node];
+                        continue;
+                    }
+                    symbol = this.createSymbol(value, update);
+                    this.left[node] = symbol - node;
+                }
+                else if (value > this.value[node]) {
+                    under += this.under[node];
+                    if (this.right[node] != 0) {
+                        node += this.right[node];
+                        continue;
+                    }
+                    symbol = this.createSymbol(value, update);
+                    this.right[node] = symbol - node;
+                }
+                else {
+                    count += this.count[node];
+                    under += this.under[node] - this.count[node];
+                    this.under[node] = (this.under[node] + update) & 0xFFFF;
+                    this.count[node] = (this.count[node] + update) & 0xFF;
+                    symbol = node;
+                }
+                break;
+            }
+        }
+        this.resultSymbol = symbol;
+        this.resultUnder = under & 0xFFFF;
+        this.resultCount = count & 0xFFFF;
+    }
+
+    /**
+     * Finds the symbol {@code code} falls on in a context. Only the root context may create symbols here; for any
+     * other context a miss means the input is corrupt and false is returned.
+     */
+    private boolean contextDecode(int context, int code, int update, int minimum, boolean root) {
+        var under = 0;
+        var count = minimum;
+        int value;
+        int symbol;
+        if (this.symbols[context] == 0) {
+            if (!root) {
+                return false;
+            }
+            value = (code / minimum) & 0xFF;
+            under = code - code % minimum;
+            symbol = this.createSymbol(value, update);
+            this.symbols[context] = symbol - context;
+        }
+        else {
+            var node = context + this.symbols[context];
+            while (true) {
+                final var after = (under + this.under[node] + (this.value[node] + 1) * minimum) & 0xFFFF;
+                final var before = (this.count[node] + minimum) & 0xFFFF;
+                if (code >= after) {
+                    under += this.under[node];
+                    if (this.right[node] != 0) {
+                        node += this.right[node];
+                        continue;
+                    }
+                    if (!root) {
+                        return false;
+                    }
+                    value = (this.value[node] + 1 + (code - after) / minimum) & 0xFF;
+                    under = code - (code - after) % minimum;
+                    symbol = this.createSymbol(value, update);
+                    this.right[node] = symbol - node;
+                }
+                else if (code < after - before) {
+                    this.under[node] = (this.under[node] + update) & 0xFFFF;
+                    if (this.left[node] != 0) {
+                        node += this.left[node];
+                        continue;
+                    }
+                    if (!root) {
+                        return false;
+                    }
+                    value = (this.value[node] - 1 - (after - before - code - 1) / minimum) & 0xFF;
+                    under = code - (after - before - code - 1) % minimum;
+                    symbol = this.createSymbol(value, update);
+                    this.left[node] = symbol - node;
+                }
+                else {
+                    value = this.value[node];
+                    count += this.count[node];
+                    under = after - before;
+                    this.under[node] = (this.under[node] + update) & 0xFFFF;
+                    this.count[node] = (this.count[node] + update) & 0xFF;
+                    symbol = node;
+                }
+                break;
+            }
+        }
+        this.resultSymbol = symbol;
+        this.resultValue = value;
+        this.resultUnder = under & 0xFFFF;
+        this.resultCount = count & 0xFFFF;
+        return true;
+    }
+
+    private boolean encode(int under, int count, int total) {
+        this.range = Integer.divideUnsigned(this.range, total);
+        this.low += under * this.range;
+        this.range *= count;
+        while (true) {
+            if (Integer.compareUnsigned(this.low ^ (this.low + this.range), RANGE_CODER_TOP) >= 0) {
+                if (Integer.compareUnsigned(this.range, RANGE_CODER_BOTTOM) >= 0) {
+                    break;
+                }
+                this.range = -this.low & (RANGE_CODER_BOTTOM - 1);
+            }
+            if (this.position >= this.end) {
+                return false;
+            }
+            this.data[this.position++] = (byte) (this.low >>> 24);
+            this.range <<= 8;
+            this.low <<= 8;
+        }
+        return true;
+    }
+
+    @Override
+    public int compress(byte[] in, int inOffset, int inLength, byte[] out, int outOffset, int outLimit) {
+        if (inLength <= 0) {
+            return 0;
+        }
+
+        this.data = out;
+        this.position = outOffset;
+        this.end = outOffset + outLimit;
+        this.low = 0;
+        this.range = ~0;
+        this.reset();
+
+        for (var i = inOffset; i < inOffset + inLength; i++) {
+            final var value = in[i] & 0xFF;
+            var slot = -1;
+            var encoded = false;
+
+            for (var subcontext = this.predicted; subcontext != ROOT; subcontext = this.parent[subcontext]) {
+                this.contextEncode(subcontext, value, SUBCONTEXT_SYMBOL_DELTA, 0);
+                slot = this.link(slot, this.resultSymbol);
+                final var under = this.resultUnder;
+                final var count = this.resultCount;
+                final var total = this.total[subcontext];
+                if (count > 0) {
+                    if (!this.encode(this.escapes[subcontext] + under, count, total)) {
+                        return 0;
+                    }
+                }
+                else {
+                    if (this.escapes[subcontext] > 0 && this.escapes[subcontext] < total) {
+                        if (!this.encode(0, this.escapes[subcontext], total)) {
+                            return 0;
+                        }
+                    }
+                    this.escapes[subcontext] += SUBCONTEXT_ESCAPE_DELTA;
+                    this.total[subcontext] += SUBCONTEXT_ESCAPE_DELTA;
+                }
+                this.updateContext(subcontext, SUBCONTEXT_SYMBOL_DELTA, 0, count);
+                if (count > 0) {
+                    encoded = true;
+                    break;
+                }
+            }
+
+            if (!encoded) {
+                this.contextEncode(ROOT, value, CONTEXT_SYMBOL_DELTA, CONTEXT_SYMBOL_MINIMUM);
+                this.link(slot, this.resultSymbol);
+                final var count = this.resultCount;
+                if (!this.encode(this.escapes[ROOT] + this.resultUnder, count, this.total[ROOT])) {
+                    return 0;
+                }
+                this.updateContext(ROOT, CONTEXT_SYMBOL_DELTA, CONTEXT_SYMBOL_MINIMUM, count);
+            }
+
+            this.nextInput();
+        }
+
+        while (this.low != 0) {
+            if (this.position >= this.end) {
+                return 0;
+            }
+            this.data[this.position++] = (byte) (this.low >>> 24);
+            this.low <<= 8;
+        }
+
+        this.data = null;
+        return this.position - outOffset;
+    }
+
+    private int read(int total) {
+        this.range = Integer.divideUnsigned(this.range, total);
+        return Integer.divideUnsigned(this.code - this.low, this.range) & 0xFFFF;
+    }
+
+    private void decode(int under, int count) {
+        this.low += under * this.range;
+        this.range *= count;
+        while (true) {
+            if (Integer.compareUnsigned(this.low ^ (this.low + this.range), RANGE_CODER_TOP) >= 0) {
+                if (Integer.compareUnsigned(this.range, RANGE_CODER_BOTTOM) >= 0) {
+                    break;
+                }
+                this.range = -this.low & (RANGE_CODER_BOTTOM - 1);
+            }
+            this.code <<= 8;
+            if (this.position < this.end) {
+                this.code |= this.data[this.position++] & 0xFF;
+            }
+            this.range <<= 8;
+            this.low <<= 8;
+        }
+    }
+
+    @Override
+    public int decompress(byte[] in, int inOffset, int inLength, byte[] out, int outOffset, int outLimit) {
+        if (inLength <= 0) {
+            return 0;
+        }
+
+        this.data = in;
+        this.position = inOffset;
+        this.end = inOffset + inLength;
+        this.low = 0;
+        this.code = 0;
+        this.range = ~0;
+        this.reset();
+
+        for (var shift = 24; shift >= 0; shift -= 8) {
+            if (this.position < this.end) {
+                this.code |= (this.data[this.position++] & 0xFF) << shift;
+            }
+        }
+
+        var outPosition = outOffset;
+        final var outEnd = outOffset + outLimit;
+        try {
+            while (true) {
+                var value = 0;
+                var bottom = 0;
+                var slot = -1;
+                var subcontext = this.predicted;
+                var decoded = false;
+
+                for (; subcontext != ROOT; subcontext = this.parent[subcontext]) {
+                    if (this.escapes[subcontext] <= 0) {
+                        continue;
+                    }
+                    final var total = this.total[subcontext];
+                    if (this.escapes[subcontext] >= total) {
+                        continue;
+                    }
+                    var code = this.read(total);
+                    if (code < this.escapes[subcontext]) {
+                        this.decode(0, this.escapes[subcontext]);
+                        continue;
+                    }
+                    code -= this.escapes[subcontext];
+                    if (!this.contextDecode(subcontext, code, SUBCONTEXT_SYMBOL_DELTA, 0, false)) {
+                        return 0;
+                    }
+                    value = this.resultValue;
+                    bottom = this.resultSymbol;
+                    final var count = this.resultCount;
+                    this.decode(this.escapes[subcontext] + this.resultUnder, count);
+                    this.updateContext(subcontext, SUBCONTEXT_SYMBOL_DELTA, 0, count);
+                    decoded = true;
+                    break;
+                }
+
+                if (!decoded) {
+                    final var total = this.total[ROOT];
+                    var code = this.read(total);
+                    if (code < this.escapes[ROOT]) {
+                        this.decode(0, this.escapes[ROOT]);
+                        break;
+                    }
+                    code -= this.escapes[ROOT];
+                    this.contextDecode(ROOT, code, CONTEXT_SYMBOL_DELTA, CONTEXT_SYMBOL_MINIMUM, true);
+                    value = this.resultValue;
+                    bottom = this.resultSymbol;
+                    final var count = this.resultCount;
+                    this.decode(this.escapes[ROOT] + this.resultUnder, count);
+                    this.updateContext(ROOT, CONTEXT_SYMBOL_DELTA, CONTEXT_SYMBOL_MINIMUM, count);
+                }
+
+                for (var patch = this.predicted; patch != subcontext; patch = this.parent[patch]) {
+                    this.contextEncode(patch, value, SUBCONTEXT_SYMBOL_DELTA, 0);
+                    slot = this.link(slot, this.resultSymbol);
+                    final var count = this.resultCount;
+                    if (count <= 0) {
+                        this.escapes[patch] += SUBCONTEXT_ESCAPE_DELTA;
+                        this.total[patch] += SUBCONTEXT_ESCAPE_DELTA;
+                    }
+                    this.updateContext(patch, SUBCONTEXT_SYMBOL_DELTA, 0, count);
+                }
+                this.link(slot, bottom);
+
+                if (outPosition >= outEnd) {
+                    return 0;
+                }
+                out[outPosition++] = (byte) value;
+
+                this.nextInput();
+            }
+        } finally {
+            this.data = null;
+        }
+
+        return outPosition - outOffset;
+    }
+}
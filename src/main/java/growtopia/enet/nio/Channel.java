@@ -0,0 +1,85 @@
+package growtopia.enet.nio;
+
+/**
+ * Sequencing state for one channel of a peer.
+ */
+final class Channel {
+    int outgoingReliableSequenceNumber;
+    int outgoingUnreliableSequenceNumber;
+    int incomingReliableSequenceNumber;
+    int incomingUnreliableSequenceNumber;
+
+    /**
+     * Reliable packets that cannot be delivered yet, at their (start) sequence number modulo
+     * {@link Protocol#PEER_RELIABLE_WINDOW_SIZE}. Only packets less than a window ahead of the last one delivered
+     * fit, so no two of them share a slot. Allocated the first time a packet arrives out of order.
+     */
+    private IncomingReliable[] pendingReliable;
+    private int pendingReliableCount;
+
+    /**
+     * The unreliable fragmented packet being reassembled. Only the newest is kept; older ones are abandoned.
+     */
+    IncomingReliable pendingUnreliable;
+    int pendingUnreliableReliableSequenceNumber;
+
+    Channel() {}
+
+    boolean hasPendingReliable() {
+        return this.pendingReliableCount > 0;
+    }
+
+    /**
+     * Whether a packet with this (start) sequence number is close enough to be held until its turn.
+     */
+    boolean fitsPendingReliable(int reliableSequenceNumber) {
+        return ((reliableSequenceNumber - this.incomingReliableSequenceNumber) & 0xFFFF)
+                <= Protocol.PEER_RELIABLE_WINDOW_SIZE;
+    }
+
+    IncomingReliable pendingReliable(int reliableSequenceNumber) {
+        if (this.pendingReliable == null) {
+            return null;
+        }
+        final var pending = this.pendingReliable[reliableSequenceNumber % Protocol.PEER_RELIABLE_WINDOW_SIZE];
+        return pending != null && pending.reliableSequenceNumber == reliableSequenceNumber ? pending : null;
+    }
+
+    /**
+     * Holds a packet that {@link #fitsPendingReliable fits}. Returns whatever was left in its slot, which only a
+     * peer sending overlapping sequence numbers leaves behind, or null.
+     */
+    IncomingReliable putPendingReliable(IncomingReliable pending) {
+        if (this.pendingReliable == null) {
+            this.pendingReliable = new IncomingReliable[Protocol.PEER_RELIABLE_WINDOW_SIZE];
+        }
+        final var slot = pending.reliableSequenceNumber % Protocol.PEER_RELIABLE_WINDOW_SIZE;
+        final var displaced = this.pendingReliable[slot];
+        this.pendingReliable[slot] = pending;
+        if (displaced == null) {
+            this.pendingReliableCount++;
+        }
+        return displaced;
+    }
+
+    void removePendingReliable(int reliableSequenceNumber) {
+        final var slot = reliableSequenceNumber % Protocol.PEER_RELIABLE_WINDOW_SIZE;
+        if (this.pendingReliable[slot] != null) {
+            this.pendingReliable[slot] = null;
+            this.pendingReliableCount--;
+        }
+    }
+
+    /**
+     * Whether a reliable sequence number falls in the window libenet would accept.
+     */
+    boolean inReliableWindow(int reliableSequenceNumber) {
+        var reliableWindow = reliableSequenceNumber / Protocol.PEER_RELIABLE_WINDOW_SIZE;
+        final var currentWindow = this.incomingReliableSequenceNumber / Protocol.PEER_RELIABLE_WINDOW_SIZE;
+        if (reliableSequenceNumber < this.incomingReliableSequenceNumber) {
+            reliableWindow += Protocol.PEER_RELIABLE_WINDOWS;
+        }
+        return reliableWindow >= currentWindow
+                && reliableWindow < currentWindow + Protocol.PEER_FREE_RELIABLE_WINDOWS - 1;
+    }
+}
@@ -0,0 +1,36 @@
+package growtopia.enet.nio;
+
+/**
+ * A reliable packet that arrived ahead of its turn, or a fragmented one still being put back together.
+ */
+final class IncomingReliable {
+    final int reliableSequenceNumber;
+    final int fragmentCount;
+    final byte[] data;
+    private final int[] fragments;
+    private int fragmentsRemaining;
+
+    IncomingReliable(int reliableSequenceNumber, int fragmentCount, byte[] data) {
+        this.reliableSequenceNumber = reliableSequenceNumber;
+        this.fragmentCount = fragmentCount;
+        this.data = data;
+        this.fragments = fragmentCount > 1 ? new int[(fragmentCount + 31) / 32] : null;
+        this.fragmentsRemaining = fragmentCount > 1 ? fragmentCount : 0;
+    }
+
+    boolean isComplete() {
+        return this.fragmentsRemaining == 0;
+    }
+
+    /**
+     * Copies a fragment into place unless it has been seen before.
+     */
+    void addFragment(int fragmentNumber, int fragmentOffset, byte[] source, int offset, int length) {
+        final var bit = 1 << (fragmentNumber % 32);
+        if ((this.fragments[fragmentNumber / 32] & bit) == 0) {
+            this.fragments[fragmentNumber / 32] |= bit;
+            this.fragmentsRemaining--;
+            System.arraycopy(source, offset, this.data, fragmentOffset, length);
+        }
+    }
+}
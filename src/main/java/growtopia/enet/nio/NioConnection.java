@@ -0,0 +1,60 @@
+package growtopia.enet.nio;
+
+import growtopia.transport.Connection;
+import growtopia.transport.Delivery;
+
+/**
+ * A {@link Connection} backed by a {@link NioPeer}. Lives from the connect event to the disconnect event, after
+ * which it refuses everything, since by then the peer may already belong to someone else.
+ */
+final class NioConnection implements Connection {
+    private final long id;
+    private final NioPeer peer;
+    private boolean open = true;
+
+    NioConnection(long id, NioPeer peer) {
+        this.id = id;
+        this.peer = peer;
+    }
+
+    void close() {
+        this.open = false;
+    }
+
+    @Override
+    public long id() {
+        return this.id;
+    }
+
+    @Override
+    public boolean send(byte[] data, Delivery delivery) {
+        if (!this.open) {
+            return false;
+        }
+        return this.peer.send(0, data, switch (delivery) {
+            case RELIABLE -> NioHost.PACKET_FLAG_RELIABLE;
+            case UNRELIABLE -> 0;
+            case UNSEQUENCED -> NioHost.PACKET_FLAG_UNSEQUENCED;
+        });
+    }
+
+    @Override
+    public long pendingData() {
+        return this.open ? this.peer.queuedData : 0;
+    }
+
+    @Override
+    public void disconnect() {
+        if (this.open) {
+            this.peer.disconnect(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NioConnection[" +
+                "id=" + this.id +
+                ", peer=" + this.peer +
+                ']';
+    }
+}
@@ -0,0 +1,1191 @@
+package growtopia.enet.nio;
+
+import growtopia.enet.Enet;
+import growtopia.enet.codec.CodecStats;
+import growtopia.enet.codec.Compressor;
+import growtopia.enet.codec.RangeCoder;
+import growtopia.transport.ConnectionHandler;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * A pure Java implementation of the server side of the ENet protocol, wire compatible with libenet 1.3 and
+ * offering the same surface as {@link Enet.Host}, but driving a {@link ConnectionHandler} directly.
+ *
+ * Datagrams are received into and sent from direct buffers. Each pass of the service loop drains up to
+ * {@link #RECEIVE_BATCH} datagrams before flushing every peer's queued commands at once, so replies to a burst
+ * of traffic go out packed into as few datagrams as possible.
+ *
+ * Differences from libenet: there is no bandwidth throttling, and unreliable packets that arrive ahead of the
+ * reliable packet they follow are dropped rather than held back.
+ */
+public final class NioHost implements AutoCloseable {
+    static final int PACKET_FLAG_RELIABLE = 1;
+    static final int PACKET_FLAG_UNSEQUENCED = 1 << 1;
+
+    private static final int RECEIVE_BATCH = 256;
+
+    /**
+     * Upper bound on how long the loop sleeps without traffic, so retransmissions and pings stay on time.
+     */
+    private static final int SERVICE_WAIT_MILLIS = 10;
+
+    /**
+     * How long a stopping host waits for its peers to acknowledge their disconnects before cutting them off.
+     */
+    static final long DRAIN_TIMEOUT_NANOS = 5_000_000_000L;
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final NioPeer[] peers;
+    private final int channelLimit;
+    private final int incomingBandwidth;
+    private final int outgoingBandwidth;
+    private final long startMillis;
+    private final int duplicatePeers = Protocol.MAXIMUM_PEER_ID;
+    final int mtu = Protocol.HOST_DEFAULT_MTU;
+    final long maximumPacketSize = Protocol.HOST_DEFAULT_MAXIMUM_PACKET_SIZE;
+    private long maximumWaitingData = Protocol.HOST_DEFAULT_MAXIMUM_WAITING_DATA;
+    int serviceTime;
+
+    private Checksum checksum;
+    private Compressor compressor;
+    private final CodecStats codecStats = new CodecStats();
+
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(Protocol.MAXIMUM_MTU);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(Protocol.MAXIMUM_MTU);
+    private final byte[] receivedData = new byte[Protocol.MAXIMUM_MTU];
+    private final byte[] decompressedData = new byte[Protocol.MAXIMUM_MTU];
+    private final byte[] commandData = new byte[Protocol.MAXIMUM_MTU];
+    private final byte[] compressedData = new byte[Protocol.MAXIMUM_MTU];
+    private final byte[] headerData = new byte[Protocol.HEADER_SIZE + Protocol.CHECKSUM_SIZE];
+
+    private final ArrayDeque<OutgoingCommand> freeCommands = new ArrayDeque<>();
+    private final ArrayDeque<OutgoingCommand> timedOutCommands = new ArrayDeque<>();
+    private long nextConnectionId = 0;
+    private ConnectionHandler handler;
+    private volatile boolean stopRequested;
+    private boolean draining;
+
+    private NioHost(DatagramChannel channel, Selector selector, int peerCount, int channelLimit,
+                    int incomingBandwidth, int outgoingBandwidth) {
+        this.channel = channel;
+        this.selector = selector;
+        this.channelLimit = channelLimit;
+        this.incomingBandwidth = incomingBandwidth;
+        this.outgoingBandwidth = outgoingBandwidth;
+        this.startMillis = System.currentTimeMillis();
+        this.serviceTime = this.now();
+        this.peers = new NioPeer[peerCount];
+        for (int i = 0; i < peerCount; i++) {
+            this.peers[i] = new NioPeer(this, i);
+        }
+    }
+
+    public static NioHost create(Enet.Address address, long peerCount, long channelLimit, int incomingBandwidth, int outgoingBandwidth) {
+        if (peerCount > Protocol.MAXIMUM_PEER_ID) {
+            throw new IllegalArgumentException("At most " + Protocol.MAXIMUM_PEER_ID + " peers are supported");
+        }
+        if (channelLimit == 0 || channelLimit > Protocol.MAXIMUM_CHANNEL_COUNT) {
+            channelLimit = Protocol.MAXIMUM_CHANNEL_COUNT;
+        }
+        else if (channelLimit < Protocol.MINIMUM_CHANNEL_COUNT) {
+            channelLimit = Protocol.MINIMUM_CHANNEL_COUNT;
+        }
+
+        try {
+            final var channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.bind(toSocketAddress(address));
+            final var selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+            return new NioHost(
+                    channel,
+                    selector,
+                    (int) peerCount,
+                    (int) channelLimit,
+                    incomingBandwidth,
+                    outgoingBandwidth
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * libenet keeps IPv4 addresses as the in_addr bytes read as a native (little endian) int, and ports in host
+     * order.
+     */
+    static InetSocketAddress toSocketAddress(Enet.Address address) {
+        final var host = address.host();
+        try {
+            return new InetSocketAddress(
+                    InetAddress.getByAddress(new byte[] {
+                            (byte) host, (byte) (host >>> 8), (byte) (host >>> 16), (byte) (host >>> 24)
+                    }),
+                    Short.toUnsignedInt(address.port())
+            );
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    static Enet.Address toEnetAddress(InetSocketAddress address) {
+        if (address == null) {
+            return null;
+        }
+        final var bytes = address.getAddress() instanceof Inet4Address
+                ? address.getAddress().getAddress()
+                : new byte[4];
+        return new Enet.Address(
+                (bytes[0] & 0xFF) | (bytes[1] & 0xFF) << 8 | (bytes[2] & 0xFF) << 16 | (bytes[3] & 0xFF) << 24,
+                (short) address.getPort()
+        );
+    }
+
+    public Enet.Address address() {
+        try {
+            return toEnetAddress((InetSocketAddress) this.channel.getLocalAddress());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void setChecksumCallbackToCRC32() {
+        this.setChecksum(new CRC32());
+    }
+
+    /**
+     * Puts a checksum in every datagram header, or stops doing so if null.
+     */
+    public void setChecksum(Checksum checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * Caps how much received data a single peer may have buffered while it waits to be dispatched, such as
+     * reliable packets that arrived ahead of a lost one. As in libenet, anything past the cap is dropped.
+     */
+    public void setMaximumWaitingData(long maximumWaitingData) {
+        this.maximumWaitingData = maximumWaitingData;
+    }
+
+    public void compressWithRangeCoder() {
+        this.setCompressor(new RangeCoder());
+    }
+
+    /**
+     * Compresses datagrams with the given compressor, or stops compressing them if null.
+     */
+    public void setCompressor(Compressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public CodecStats codecStats() {
+        return this.codecStats;
+    }
+
+    boolean checksumEnabled() {
+        return this.checksum != null;
+    }
+
+    private int now() {
+        // Offset so that a service time of 0, which libenet uses to mean "unset", never comes up in practice.
+        return (int) (System.currentTimeMillis() - this.startMillis) + 1000;
+    }
+
+    OutgoingCommand acquireCommand() {
+        final var command = this.freeCommands.pollFirst();
+        return command == null ? new OutgoingCommand() : command;
+    }
+
+    void releaseCommand(OutgoingCommand command) {
+        command.clear();
+        this.freeCommands.addFirst(command);
+    }
+
+    /**
+     * Makes {@link #listenForEvents} drain its peers and return. May be called from any thread.
+     */
+    public void stop() {
+        this.stopRequested = true;
+        this.selector.wakeup();
+    }
+
+    /**
+     * Asks every peer that hasn't been asked yet to disconnect once its queue is empty. Returns whether any peers
+     * are left.
+     */
+    private boolean disconnectPeers() {
+        var remaining = false;
+        for (final var peer : this.peers) {
+            if (peer.state == NioPeer.STATE_CONNECTED || peer.state == NioPeer.STATE_ACKNOWLEDGING_CONNECT) {
+                peer.disconnectLater(0);
+            }
+            remaining |= peer.state != NioPeer.STATE_DISCONNECTED;
+        }
+        return remaining;
+    }
+
+    /**
+     * Cuts off every peer still left once the drain has timed out, telling the handler about those it knew of.
+     */
+    private void resetPeers() {
+        for (final var peer : this.peers) {
+            if (peer.state != NioPeer.STATE_DISCONNECTED) {
+                peer.sendDisconnectNow(0);
+                this.notifyDisconnect(peer);
+            }
+        }
+    }
+
+    /**
+     * Services peers until {@link #stop()} is called, then disconnects them all, waiting up to
+     * {@link #DRAIN_TIMEOUT_NANOS} for what was sent to them to get through, and returns. Peers that haven't gone
+     * by then are cut off, and the handler is told they disconnected. Peers that finish connecting while the host
+     * drains are cut off without the handler hearing of them.
+     */
+    public void listenForEvents(ConnectionHandler callback) {
+        this.handler = callback;
+        this.draining = false;
+        var drainStartedNanos = 0L;
+        try {
+            while (true) {
+                if (this.stopRequested && !this.draining) {
+                    this.draining = true;
+                    drainStartedNanos = System.nanoTime();
+                    callback.onStop();
+                }
+                if (this.draining
+                        && (!this.disconnectPeers() || System.nanoTime() - drainStartedNanos >= DRAIN_TIMEOUT_NANOS)) {
+                    this.serviceTime = this.now();
+                    this.sendOutgoingCommands();
+                    this.resetPeers();
+                    return;
+                }
+
+                this.serviceTime = this.now();
+                final var received = this.receiveIncomingCommands();
+                this.serviceTime = this.now();
+                this.sendOutgoingCommands();
+                callback.onIdle();
+                if (received == 0) {
+                    this.selector.select(SERVICE_WAIT_MILLIS);
+                    this.selector.selectedKeys().clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.handler = null;
+        }
+    }
+
+    private int receiveIncomingCommands() throws IOException {
+        var received = 0;
+        while (received < RECEIVE_BATCH) {
+            this.receiveBuffer.clear();
+            final var from = (InetSocketAddress) this.channel.receive(this.receiveBuffer);
+            if (from == null) {
+                break;
+            }
+            this.receiveBuffer.flip();
+            final var length = this.receiveBuffer.remaining();
+            this.receiveBuffer.get(this.receivedData, 0, length);
+            this.handleIncomingCommands(from, length);
+            received++;
+        }
+        return received;
+    }
+
+    private void handleIncomingCommands(InetSocketAddress from, int length) {
+        if (length < 2) {
+            return;
+        }
+
+        var data = this.receivedData;
+        final var peerIDField = Protocol.getUnsignedShort(data, 0);
+        final var sessionID = (peerIDField & Protocol.HEADER_SESSION_MASK) >>> Protocol.HEADER_SESSION_SHIFT;
+        final var flags = peerIDField & Protocol.HEADER_FLAG_MASK;
+        final var peerID = peerIDField & ~(Protocol.HEADER_FLAG_MASK | Protocol.HEADER_SESSION_MASK);
+
+        var headerSize = (flags & Protocol.HEADER_FLAG_SENT_TIME) != 0 ? Protocol.HEADER_SIZE : 2;
+        if (this.checksum != null) {
+            headerSize += Protocol.CHECKSUM_SIZE;
+        }
+        if (length < headerSize) {
+            return;
+        }
+
+        NioPeer peer;
+        if (peerID == Protocol.MAXIMUM_PEER_ID) {
+            peer = null;
+        }
+        else if (peerID >= this.peers.length) {
+            return;
+        }
+        else {
+            peer = this.peers[peerID];
+            if (peer.state == NioPeer.STATE_DISCONNECTED
+                    || peer.state == NioPeer.STATE_ZOMBIE
+                    || !from.equals(peer.address)
+                    || (peer.outgoingPeerID < Protocol.MAXIMUM_PEER_ID && sessionID != peer.incomingSessionID)) {
+                return;
+            }
+        }
+
+        if ((flags & Protocol.HEADER_FLAG_COMPRESSED) != 0) {
+            if (this.compressor == null) {
+                return;
+            }
+            final var started = System.nanoTime();
+            final var originalSize = this.compressor.decompress(
+                    data, headerSize, length - headerSize,
+                    this.decompressedData, headerSize, this.decompressedData.length - headerSize
+            );
+            this.codecStats.recordDecompress(length - headerSize, originalSize, System.nanoTime() - started);
+            if (originalSize <= 0) {
+                return;
+            }
+            System.arraycopy(data, 0, this.decompressedData, 0, headerSize);
+            data = this.decompressedData;
+            length = headerSize + originalSize;
+        }
+
+        if (this.checksum != null) {
+            final var desiredChecksum = Protocol.getInt(data, headerSize - Protocol.CHECKSUM_SIZE);
+            Protocol.putInt(data, headerSize - Protocol.CHECKSUM_SIZE, peer != null ? peer.connectID : 0);
+            final var started = System.nanoTime();
+            this.checksum.reset();
+            this.checksum.update(data, 0, length);
+            final var actualChecksum = (int) this.checksum.getValue();
+            this.codecStats.recordChecksum(length, System.nanoTime() - started);
+            if (actualChecksum != desiredChecksum) {
+                return;
+            }
+        }
+
+        if (peer != null) {
+            peer.incomingDataTotal += length;
+        }
+
+        var current = headerSize;
+        while (current < length) {
+            if (current + 4 > length) {
+                break;
+            }
+            final var command = Protocol.getUnsignedByte(data, current);
+            final var commandNumber = command & Protocol.COMMAND_MASK;
+            if (commandNumber >= Protocol.COMMAND_COUNT) {
+                break;
+            }
+            final var commandSize = Protocol.COMMAND_SIZES[commandNumber];
+            if (commandSize == 0 || current + commandSize > length) {
+                break;
+            }
+            final var offset = current;
+            current += commandSize;
+
+            if (peer == null && commandNumber != Protocol.COMMAND_CONNECT) {
+                break;
+            }
+
+            final var channelID = Protocol.getUnsignedByte(data, offset + 1);
+            final var reliableSequenceNumber = Protocol.getUnsignedShort(data, offset + 2);
+
+            var dataLength = 0;
+            switch (commandNumber) {
+                case Protocol.COMMAND_SEND_RELIABLE -> dataLength = Protocol.getUnsignedShort(data, offset + 4);
+                case Protocol.COMMAND_SEND_UNRELIABLE,
+                        Protocol.COMMAND_SEND_UNSEQUENCED,
+                        Protocol.COMMAND_SEND_FRAGMENT,
+                        Protocol.COMMAND_SEND_UNRELIABLE_FRAGMENT -> dataLength = Protocol.getUnsignedShort(data, offset + 6);
+                default -> {}
+            }
+            if (dataLength > this.maximumPacketSize || current + dataLength > length) {
+                break;
+            }
+            final var payload = current;
+            current += dataLength;
+
+            final boolean ok;
+            switch (commandNumber) {
+                case Protocol.COMMAND_ACKNOWLEDGE -> ok = this.handleAcknowledge(peer, data, offset, channelID);
+                case Protocol.COMMAND_CONNECT -> {
+                    if (peer != null) {
+                        ok = false;
+                    }
+                    else {
+                        peer = this.handleConnect(from, data, offset);
+                        ok = peer != null;
+                    }
+                }
+                case Protocol.COMMAND_DISCONNECT -> ok = this.handleDisconnect(peer, data, offset, command);
+                case Protocol.COMMAND_PING,
+                        Protocol.COMMAND_BANDWIDTH_LIMIT,
+                        Protocol.COMMAND_THROTTLE_CONFIGURE -> ok = this.handleControl(peer, data, offset, commandNumber);
+                case Protocol.COMMAND_SEND_RELIABLE -> ok = this.handleSendReliable(
+                        peer, channelID, reliableSequenceNumber, data, payload, dataLength
+                );
+                case Protocol.COMMAND_SEND_UNRELIABLE -> ok = this.handleSendUnreliable(
+                        peer, channelID, reliableSequenceNumber, data, offset, payload, dataLength
+                );
+                case Protocol.COMMAND_SEND_UNSEQUENCED -> ok = this.handleSendUnsequenced(
+                        peer, channelID, data, offset, payload, dataLength
+                );
+                case Protocol.COMMAND_SEND_FRAGMENT -> ok = this.handleSendFragment(
+                        peer, channelID, data, offset, payload, dataLength
+                );
+                case Protocol.COMMAND_SEND_UNRELIABLE_FRAGMENT -> ok = this.handleSendUnreliableFragment(
+                        peer, channelID, reliableSequenceNumber, data, offset, payload, dataLength
+                );
+                default -> ok = false;
+            }
+            if (!ok) {
+                break;
+            }
+
+            if (peer != null && (command & Protocol.COMMAND_FLAG_ACKNOWLEDGE) != 0) {
+                if ((flags & Protocol.HEADER_FLAG_SENT_TIME) == 0) {
+                    break;
+                }
+                final var sentTime = Protocol.getUnsignedShort(data, 2);
+                switch (peer.state) {
+                    case NioPeer.STATE_DISCONNECTING,
+                            NioPeer.STATE_ACKNOWLEDGING_CONNECT,
+                            NioPeer.STATE_DISCONNECTED,
+                            NioPeer.STATE_ZOMBIE -> {}
+                    case NioPeer.STATE_ACKNOWLEDGING_DISCONNECT -> {
+                        if (commandNumber == Protocol.COMMAND_DISCONNECT) {
+                            peer.queueAcknowledgement(commandNumber, channelID, reliableSequenceNumber, sentTime);
+                        }
+                    }
+                    default -> peer.queueAcknowledgement(commandNumber, channelID, reliableSequenceNumber, sentTime);
+                }
+            }
+        }
+    }
+
+    private NioPeer handleConnect(InetSocketAddress from, byte[] data, int offset) {
+        var channelCount = Protocol.getInt(data, offset + 16);
+        if (channelCount < Protocol.MINIMUM_CHANNEL_COUNT || channelCount > Protocol.MAXIMUM_CHANNEL_COUNT) {
+            return null;
+        }
+
+        final var connectID = Protocol.getInt(data, offset + 40);
+        NioPeer peer = null;
+        var duplicatePeers = 0;
+        for (final var currentPeer : this.peers) {
+            if (currentPeer.state == NioPeer.STATE_DISCONNECTED) {
+                if (peer == null) {
+                    peer = currentPeer;
+                }
+            }
+            else if (currentPeer.address.getAddress().equals(from.getAddress())) {
+                if (currentPeer.address.getPort() == from.getPort() && currentPeer.connectID == connectID) {
+                    return null;
+                }
+                duplicatePeers++;
+            }
+        }
+        if (peer == null || duplicatePeers >= this.duplicatePeers) {
+            return null;
+        }
+
+        channelCount = Math.min(channelCount, this.channelLimit);
+        peer.channels = new Channel[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            peer.channels[i] = new Channel();
+        }
+        peer.channelCount = channelCount;
+        peer.state = NioPeer.STATE_ACKNOWLEDGING_CONNECT;
+        peer.connectID = connectID;
+        peer.address = from;
+        peer.lastReceiveTime = this.serviceTime;
+        peer.outgoingPeerID = Protocol.getUnsignedShort(data, offset + 4);
+        peer.incomingBandwidth = Protocol.getInt(data, offset + 20);
+        peer.outgoingBandwidth = Protocol.getInt(data, offset + 24);
+        peer.packetThrottleInterval = Protocol.getInt(data, offset + 28);
+        peer.packetThrottleAcceleration = Protocol.getInt(data, offset + 32);
+        peer.packetThrottleDeceleration = Protocol.getInt(data, offset + 36);
+        peer.eventData = Protocol.getInt(data, offset + 44);
+
+        final var sessionMask = Protocol.HEADER_SESSION_MASK >>> Protocol.HEADER_SESSION_SHIFT;
+        final var requestedIncomingSessionID = Protocol.getUnsignedByte(data, offset + 6);
+        var incomingSessionID = requestedIncomingSessionID == 0xFF ? peer.outgoingSessionID : requestedIncomingSessionID;
+        incomingSessionID = (incomingSessionID + 1) & sessionMask;
+        if (incomingSessionID == peer.outgoingSessionID) {
+            incomingSessionID = (incomingSessionID + 1) & sessionMask;
+        }
+        peer.outgoingSessionID = incomingSessionID;
+
+        final var requestedOutgoingSessionID = Protocol.getUnsignedByte(data, offset + 7);
+        var outgoingSessionID = requestedOutgoingSessionID == 0xFF ? peer.incomingSessionID : requestedOutgoingSessionID;
+        outgoingSessionID = (outgoingSessionID + 1) & sessionMask;
+        if (outgoingSessionID == peer.incomingSessionID) {
+            outgoingSessionID = (outgoingSessionID + 1) & sessionMask;
+        }
+        peer.incomingSessionID = outgoingSessionID;
+
+        final var mtu = Math.max(Protocol.MINIMUM_MTU, Math.min(Protocol.MAXIMUM_MTU, Protocol.getInt(data, offset + 8)));
+        peer.mtu = Math.min(mtu, this.mtu);
+
+        if (this.outgoingBandwidth == 0 && peer.incomingBandwidth == 0) {
+            peer.windowSize = Protocol.MAXIMUM_WINDOW_SIZE;
+        }
+        else if (this.outgoingBandwidth == 0 || peer.incomingBandwidth == 0) {
+            peer.windowSize = (Math.max(this.outgoingBandwidth, peer.incomingBandwidth) / Protocol.PEER_WINDOW_SIZE_SCALE)
+                    * Protocol.MINIMUM_WINDOW_SIZE;
+        }
+        else {
+            peer.windowSize = (Math.min(this.outgoingBandwidth, peer.incomingBandwidth) / Protocol.PEER_WINDOW_SIZE_SCALE)
+                    * Protocol.MINIMUM_WINDOW_SIZE;
+        }
+        peer.windowSize = clampWindowSize(peer.windowSize);
+
+        var windowSize = this.incomingBandwidth == 0
+                ? Protocol.MAXIMUM_WINDOW_SIZE
+                : (this.incomingBandwidth / Protocol.PEER_WINDOW_SIZE_SCALE) * Protocol.MINIMUM_WINDOW_SIZE;
+        windowSize = clampWindowSize(Math.min(windowSize, Protocol.getInt(data, offset + 12)));
+
+        final var verify = this.acquireCommand().set(
+                Protocol.COMMAND_VERIFY_CONNECT | Protocol.COMMAND_FLAG_ACKNOWLEDGE, 0xFF, null, 0, 0
+        );
+        final var header = verify.header;
+        Protocol.putShort(header, 4, peer.incomingPeerID);
+        header[6] = (byte) incomingSessionID;
+        header[7] = (byte) outgoingSessionID;
+        Protocol.putInt(header, 8, peer.mtu);
+        Protocol.putInt(header, 12, windowSize);
+        Protocol.putInt(header, 16, channelCount);
+        Protocol.putInt(header, 20, this.incomingBandwidth);
+        Protocol.putInt(header, 24, this.outgoingBandwidth);
+        Protocol.putInt(header, 28, peer.packetThrottleInterval);
+        Protocol.putInt(header, 32, peer.packetThrottleAcceleration);
+        Protocol.putInt(header, 36, peer.packetThrottleDeceleration);
+        Protocol.putInt(header, 40, peer.connectID);
+        peer.queueOutgoingCommand(verify);
+        return peer;
+    }
+
+    private static int clampWindowSize(int windowSize) {
+        return Math.max(Protocol.MINIMUM_WINDOW_SIZE, Math.min(Protocol.MAXIMUM_WINDOW_SIZE, windowSize));
+    }
+
+    private boolean handleAcknowledge(NioPeer peer, byte[] data, int offset, int channelID) {
+        if (peer.state == NioPeer.STATE_DISCONNECTED || peer.state == NioPeer.STATE_ZOMBIE) {
+            return true;
+        }
+
+        var receivedSentTime = Protocol.getUnsignedShort(data, offset + 6);
+        receivedSentTime |= this.serviceTime & 0xFFFF0000;
+        if ((receivedSentTime & 0x8000) > (this.serviceTime & 0x8000)) {
+            receivedSentTime -= 0x10000;
+        }
+        if (Protocol.timeLess(this.serviceTime, receivedSentTime)) {
+            return true;
+        }
+
+        peer.updateRoundTripTime(Math.max(1, Protocol.timeDifference(this.serviceTime, receivedSentTime)));
+        peer.lastReceiveTime = this.serviceTime;
+        peer.earliestTimeout = 0;
+
+        final var commandNumber = peer.removeSentReliableCommand(Protocol.getUnsignedShort(data, offset + 4), channelID);
+        switch (peer.state) {
+            case NioPeer.STATE_ACKNOWLEDGING_CONNECT -> {
+                if (commandNumber != Protocol.COMMAND_VERIFY_CONNECT) {
+                    return false;
+                }
+                this.notifyConnect(peer);
+            }
+            case NioPeer.STATE_DISCONNECTING -> {
+                if (commandNumber != Protocol.COMMAND_DISCONNECT) {
+                    return false;
+                }
+                this.notifyDisconnect(peer);
+            }
+            case NioPeer.STATE_DISCONNECT_LATER -> {
+                if (!peer.hasQueuedCommands()) {
+                    peer.disconnect(peer.eventData);
+                }
+            }
+            default -> {}
+        }
+        return true;
+    }
+
+    private boolean handleDisconnect(NioPeer peer, byte[] data, int offset, int command) {
+        if (peer.state == NioPeer.STATE_DISCONNECTED
+                || peer.state == NioPeer.STATE_ZOMBIE
+                || peer.state == NioPeer.STATE_ACKNOWLEDGING_DISCONNECT) {
+            return true;
+        }
+
+        peer.resetQueues();
+        if (peer.state != NioPeer.STATE_CONNECTED
+                && peer.state != NioPeer.STATE_DISCONNECT_LATER
+                && peer.state != NioPeer.STATE_DISCONNECTING) {
+            peer.reset();
+        }
+        else if (peer.state == NioPeer.STATE_DISCONNECTING || (command & Protocol.COMMAND_FLAG_ACKNOWLEDGE) == 0) {
+            peer.state = NioPeer.STATE_ZOMBIE;
+        }
+        else {
+            peer.state = NioPeer.STATE_ACKNOWLEDGING_DISCONNECT;
+        }
+
+        if (peer.state != NioPeer.STATE_DISCONNECTED) {
+            peer.eventData = Protocol.getInt(data, offset + 4);
+        }
+        return true;
+    }
+
+    private boolean handleControl(NioPeer peer, byte[] data, int offset, int commandNumber) {
+        if (peer.state != NioPeer.STATE_CONNECTED && peer.state != NioPeer.STATE_DISCONNECT_LATER) {
+            return false;
+        }
+        switch (commandNumber) {
+            case Protocol.COMMAND_BANDWIDTH_LIMIT -> {
+                peer.incomingBandwidth = Protocol.getInt(data, offset + 4);
+                peer.outgoingBandwidth = Protocol.getInt(data, offset + 8);
+                if (peer.incomingBandwidth == 0 && this.outgoingBandwidth == 0) {
+                    peer.windowSize = Protocol.MAXIMUM_WINDOW_SIZE;
+                }
+                else if (peer.incomingBandwidth == 0 || this.outgoingBandwidth == 0) {
+                    peer.windowSize = clampWindowSize(
+                            (Math.max(peer.incomingBandwidth, this.outgoingBandwidth) / Protocol.PEER_WINDOW_SIZE_SCALE)
+                                    * Protocol.MINIMUM_WINDOW_SIZE
+                    );
+                }
+                else {
+                    peer.windowSize = clampWindowSize(
+                            (Math.min(peer.incomingBandwidth, this.outgoingBandwidth) / Protocol.PEER_WINDOW_SIZE_SCALE)
+                                    * Protocol.MINIMUM_WINDOW_SIZE
+                    );
+                }
+            }
+            case Protocol.COMMAND_THROTTLE_CONFIGURE -> {
+                peer.packetThrottleInterval = Protocol.getInt(data, offset + 4);
+                peer.packetThrottleAcceleration = Protocol.getInt(data, offset + 8);
+                peer.packetThrottleDeceleration = Protocol.getInt(data, offset + 12);
+            }
+            default -> {}
+        }
+        return true;
+    }
+
+    private static boolean canReceive(NioPeer peer, int channelID) {
+        return channelID < peer.channelCount
+                && (peer.state == NioPeer.STATE_CONNECTED || peer.state == NioPeer.STATE_DISCONNECT_LATER);
+    }
+
+    private void deliver(NioPeer peer, byte[] data) {
+        this.handler.onReceive(peer.connection, data);
+    }
+
+    private void dispatchReliable(NioPeer peer, Channel channel, byte[] data, int lastSequenceNumber) {
+        channel.incomingReliableSequenceNumber = lastSequenceNumber & 0xFFFF;
+        channel.incomingUnreliableSequenceNumber = 0;
+        this.deliver(peer, data);
+        // The handler may have disconnected the peer, in which case whatever is still pending is dropped with it.
+        while (channel.hasPendingReliable() && peer.state == NioPeer.STATE_CONNECTED) {
+            final var next = channel.pendingReliable((channel.incomingReliableSequenceNumber + 1) & 0xFFFF);
+            if (next == null || !next.isComplete()) {
+                break;
+            }
+            channel.removePendingReliable(next.reliableSequenceNumber);
+            peer.totalWaitingData -= next.data.length;
+            channel.incomingReliableSequenceNumber = (next.reliableSequenceNumber + next.fragmentCount - 1) & 0xFFFF;
+            channel.incomingUnreliableSequenceNumber = 0;
+            this.deliver(peer, next.data);
+        }
+    }
+
+    private void holdReliable(NioPeer peer, Channel channel, IncomingReliable pending) {
+        final var displaced = channel.putPendingReliable(pending);
+        if (displaced != null) {
+            peer.totalWaitingData -= displaced.data.length;
+        }
+        peer.totalWaitingData += pending.data.length;
+    }
+
+    private boolean handleSendReliable(NioPeer peer, int channelID, int reliableSequenceNumber,
+                                       byte[] data, int payload, int dataLength) {
+        if (!canReceive(peer, channelID)) {
+            return false;
+        }
+        if (peer.state == NioPeer.STATE_DISCONNECT_LATER) {
+            return true;
+        }
+
+        final var channel = peer.channels[channelID];
+        if (!channel.inReliableWindow(reliableSequenceNumber)
+                || reliableSequenceNumber == channel.incomingReliableSequenceNumber) {
+            return true;
+        }
+
+        if (reliableSequenceNumber == ((channel.incomingReliableSequenceNumber + 1) & 0xFFFF)) {
+            this.dispatchReliable(peer, channel, Arrays.copyOfRange(data, payload, payload + dataLength), reliableSequenceNumber);
+        }
+        else if (channel.pendingReliable(reliableSequenceNumber) == null) {
+            // Refused rather than acknowledged, so the peer sends it again once there is room.
+            if (!channel.fitsPendingReliable(reliableSequenceNumber)
+                    || peer.totalWaitingData >= this.maximumWaitingData) {
+                return false;
+            }
+            this.holdReliable(peer, channel, new IncomingReliable(
+                    reliableSequenceNumber, 1, Arrays.copyOfRange(data, payload, payload + dataLength)
+            ));
+        }
+        return true;
+    }
+
+    private boolean handleSendUnreliable(NioPeer peer, int channelID, int reliableSequenceNumber,
+                                         byte[] data, int offset, int payload, int dataLength) {
+        if (!canReceive(peer, channelID)) {
+            return false;
+        }
+        if (peer.state == NioPeer.STATE_DISCONNECT_LATER) {
+            return true;
+        }
+
+        final var channel = peer.channels[channelID];
+        final var unreliableSequenceNumber = Protocol.getUnsignedShort(data, offset + 4);
+        if (reliableSequenceNumber != channel.incomingReliableSequenceNumber
+                || unreliableSequenceNumber <= channel.incomingUnreliableSequenceNumber) {
+            return true;
+        }
+        channel.incomingUnreliableSequenceNumber = unreliableSequenceNumber;
+        this.deliver(peer, Arrays.copyOfRange(data, payload, payload + dataLength));
+        return true;
+    }
+
+    private boolean handleSendUnsequenced(NioPeer peer, int channelID, byte[] data, int offset,
+                                          int payload, int dataLength) {
+        if (!canReceive(peer, channelID)) {
+            return false;
+        }
+        if (peer.state == NioPeer.STATE_DISCONNECT_LATER) {
+            return true;
+        }
+
+        var unsequencedGroup = Protocol.getUnsignedShort(data, offset + 4);
+        final var index = unsequencedGroup % Protocol.PEER_UNSEQUENCED_WINDOW_SIZE;
+        if (unsequencedGroup < peer.incomingUnsequencedGroup) {
+            unsequencedGroup += 0x10000;
+        }
+        if (unsequencedGroup >= peer.incomingUnsequencedGroup
+                + Protocol.PEER_FREE_UNSEQUENCED_WINDOWS * Protocol.PEER_UNSEQUENCED_WINDOW_SIZE) {
+            return true;
+        }
+        unsequencedGroup &= 0xFFFF;
+
+        if (unsequencedGroup - index != peer.incomingUnsequencedGroup) {
+            peer.incomingUnsequencedGroup = unsequencedGroup - index;
+            Arrays.fill(peer.unsequencedWindow, 0);
+        }
+        else if ((peer.unsequencedWindow[index / 32] & (1 << (index % 32))) != 0) {
+            return true;
+        }
+        peer.unsequencedWindow[index / 32] |= 1 << (index % 32);
+
+        this.deliver(peer, Arrays.copyOfRange(data, payload, payload + dataLength));
+        return true;
+    }
+
+    /**
+     * Validates the fields shared by both kinds of fragment, returning false if libenet would treat the command as
+     * an error.
+     */
+    private boolean validFragment(long fragmentCount, long fragmentNumber, long totalLength,
+                                  long fragmentOffset, int fragmentLength) {
+        return fragmentCount <= Protocol.MAXIMUM_FRAGMENT_COUNT
+                && fragmentNumber < fragmentCount
+                && totalLength <= this.maximumPacketSize
+                && fragmentOffset < totalLength
+                && fragmentLength <= totalLength - fragmentOffset;
+    }
+
+    private boolean handleSendFragment(NioPeer peer, int channelID, byte[] data, int offset,
+                                       int payload, int fragmentLength) {
+        if (!canReceive(peer, channelID)) {
+            return false;
+        }
+        if (peer.state == NioPeer.STATE_DISCONNECT_LATER) {
+            return true;
+        }
+
+        final var channel = peer.channels[channelID];
+        final var startSequenceNumber = Protocol.getUnsignedShort(data, offset + 4);
+        if (!channel.inReliableWindow(startSequenceNumber)
+                || startSequenceNumber == channel.incomingReliableSequenceNumber) {
+            return true;
+        }
+
+        final var fragmentCount = Integer.toUnsignedLong(Protocol.getInt(data, offset + 8));
+        final var fragmentNumber = Integer.toUnsignedLong(Protocol.getInt(data, offset + 12));
+        final var totalLength = Integer.toUnsignedLong(Protocol.getInt(data, offset + 16));
+        final var fragmentOffset = Integer.toUnsignedLong(Protocol.getInt(data, offset + 20));
+        if (!this.validFragment(fragmentCount, fragmentNumber, totalLength, fragmentOffset, fragmentLength)) {
+            return false;
+        }
+
+        var start = channel.pendingReliable(startSequenceNumber);
+        if (start == null) {
+            if (!channel.fitsPendingReliable(startSequenceNumber)
+                    || peer.totalWaitingData >= this.maximumWaitingData) {
+                return false;
+            }
+            start = new IncomingReliable(startSequenceNumber, (int) fragmentCount, new byte[(int) totalLength]);
+            this.holdReliable(peer, channel, start);
+        }
+        else if (start.fragmentCount != fragmentCount || start.data.length != totalLength) {
+            return false;
+        }
+
+        start.addFragment((int) fragmentNumber, (int) fragmentOffset, data, payload, fragmentLength);
+        if (start.isComplete() && startSequenceNumber == ((channel.incomingReliableSequenceNumber + 1) & 0xFFFF)) {
+            channel.removePendingReliable(startSequenceNumber);
+            peer.totalWaitingData -= totalLength;
+            this.dispatchReliable(peer, channel, start.data, startSequenceNumber + start.fragmentCount - 1);
+        }
+        return true;
+    }
+
+    private boolean handleSendUnreliableFragment(NioPeer peer, int channelID, int reliableSequenceNumber,
+                                                 byte[] data, int offset, int payload, int fragmentLength) {
+        if (!canReceive(peer, channelID)) {
+            return false;
+        }
+        if (peer.state == NioPeer.STATE_DISCONNECT_LATER) {
+            return true;
+        }
+
+        final var channel = peer.channels[channelID];
+        final var startSequenceNumber = Protocol.getUnsignedShort(data, offset + 4);
+        if (reliableSequenceNumber != channel.incomingReliableSequenceNumber
+                || startSequenceNumber <= channel.incomingUnreliableSequenceNumber) {
+            return true;
+        }
+
+        final var fragmentCount = Integer.toUnsignedLong(Protocol.getInt(data, offset + 8));
+        final var fragmentNumber = Integer.toUnsignedLong(Protocol.getInt(data, offset + 12));
+        final var totalLength = Integer.toUnsignedLong(Protocol.getInt(data, offset + 16));
+        final var fragmentOffset = Integer.toUnsignedLong(Protocol.getInt(data, offset + 20));
+        if (!this.validFragment(fragmentCount, fragmentNumber, totalLength, fragmentOffset, fragmentLength)) {
+            return false;
+        }
+
+        var pending = channel.pendingUnreliable;
+        if (pending == null
+                || pending.reliableSequenceNumber != startSequenceNumber
+                || channel.pendingUnreliableReliableSequenceNumber != reliableSequenceNumber) {
+            if (pending != null) {
+                peer.totalWaitingData -= pending.data.length;
+            }
+            if (peer.totalWaitingData >= this.maximumWaitingData) {
+                channel.pendingUnreliable = null;
+                return false;
+            }
+            peer.totalWaitingData += totalLength;
+            pending = new IncomingReliable(startSequenceNumber, (int) fragmentCount, new byte[(int) totalLength]);
+            channel.pendingUnreliable = pending;
+            channel.pendingUnreliableReliableSequenceNumber = reliableSequenceNumber;
+        }
+        else if (pending.fragmentCount != fragmentCount || pending.data.length != totalLength) {
+            return false;
+        }
+
+        pending.addFragment((int) fragmentNumber, (int) fragmentOffset, data, payload, fragmentLength);
+        if (pending.isComplete()) {
+            channel.pendingUnreliable = null;
+            peer.totalWaitingData -= totalLength;
+            channel.incomingUnreliableSequenceNumber = startSequenceNumber;
+            this.deliver(peer, pending.data);
+        }
+        return true;
+    }
+
+    private void notifyConnect(NioPeer peer) {
+        peer.state = NioPeer.STATE_CONNECTED;
+        if (this.draining) {
+            // The handler has already been told to stop.
+            peer.disconnect(0);
+            return;
+        }
+        peer.connection = new NioConnection(++this.nextConnectionId, peer);
+        this.handler.onConnect(peer.connection);
+    }
+
+    /**
+     * Resets the peer, telling the handler if it had been told about the connection in the first place.
+     */
+    private void notifyDisconnect(NioPeer peer) {
+        final var connection = peer.connection;
+        peer.reset();
+        if (connection != null) {
+            connection.close();
+            this.handler.onDisconnect(connection);
+        }
+    }
+
+    /**
+     * Requeues reliable commands whose acknowledgement is overdue, or gives up on the peer. Returns false if the
+     * peer was disconnected.
+     */
+    private boolean checkTimeouts(NioPeer peer) {
+        final var iterator = peer.sentReliableCommands.iterator();
+        while (iterator.hasNext()) {
+            final var command = iterator.next();
+            if (Protocol.timeDifference(this.serviceTime, command.sentTime) < command.roundTripTimeout) {
+                continue;
+            }
+
+            if (peer.earliestTimeout == 0 || Protocol.timeLess(command.sentTime, peer.earliestTimeout)) {
+                peer.earliestTimeout = command.sentTime;
+            }
+            if (peer.earliestTimeout != 0
+                    && (Protocol.timeDifference(this.serviceTime, peer.earliestTimeout) >= peer.timeoutMaximum
+                    || (command.roundTripTimeout >= command.roundTripTimeoutLimit
+                    && Protocol.timeDifference(this.serviceTime, peer.earliestTimeout) >= peer.timeoutMinimum))) {
+                this.timedOutCommands.clear();
+                this.notifyDisconnect(peer);
+                return false;
+            }
+
+            if (command.packet != null) {
+                peer.reliableDataInTransit -= command.fragmentLength;
+            }
+            peer.packetsLost++;
+            command.roundTripTimeout *= 2;
+            iterator.remove();
+            this.timedOutCommands.addLast(command);
+        }
+
+        while (!this.timedOutCommands.isEmpty()) {
+            peer.outgoingReliableCommands.addFirst(this.timedOutCommands.pollLast());
+        }
+        if (!peer.sentReliableCommands.isEmpty()) {
+            final var first = peer.sentReliableCommands.peekFirst();
+            peer.nextTimeout = first.sentTime + first.roundTripTimeout;
+        }
+        return true;
+    }
+
+    private void sendOutgoingCommands() {
+        for (final var peer : this.peers) {
+            if (peer.state == NioPeer.STATE_DISCONNECTED) {
+                continue;
+            }
+            if (peer.state == NioPeer.STATE_ZOMBIE) {
+                this.notifyDisconnect(peer);
+                continue;
+            }
+            if (!peer.sentReliableCommands.isEmpty()
+                    && !Protocol.timeLess(this.serviceTime, peer.nextTimeout)
+                    && !this.checkTimeouts(peer)) {
+                continue;
+            }
+            if (peer.state == NioPeer.STATE_CONNECTED
+                    && peer.sentReliableCommands.isEmpty()
+                    && peer.outgoingReliableCommands.isEmpty()
+                    && Protocol.timeDifference(this.serviceTime, peer.lastReceiveTime) >= peer.pingInterval) {
+                peer.ping();
+            }
+            this.flush(peer);
+        }
+    }
+
+    /**
+     * Packs everything the peer can send right now into as few datagrams as possible and sends them.
+     */
+    void flush(NioPeer peer) {
+        var budget = peer.mtu - Protocol.HEADER_SIZE;
+        if (this.checksum != null) {
+            budget -= Protocol.CHECKSUM_SIZE;
+        }
+
+        while (true) {
+            var size = 0;
+            var commandCount = 0;
+            var sentTime = false;
+            var acknowledgedDisconnect = false;
+
+            var acknowledged = 0;
+            final var acknowledgeSize = Protocol.COMMAND_SIZES[Protocol.COMMAND_ACKNOWLEDGE];
+            while (acknowledged < peer.acknowledgementCount
+                    && commandCount < Protocol.MAXIMUM_PACKET_COMMANDS
+                    && size + acknowledgeSize <= budget) {
+                final var acknowledgement = peer.acknowledgements[acknowledged++];
+                final var reliableSequenceNumber = (int) (acknowledgement >>> 16) & 0xFFFF;
+                this.commandData[size] = Protocol.COMMAND_ACKNOWLEDGE;
+                this.commandData[size + 1] = (byte) (acknowledgement >>> 32);
+                Protocol.putShort(this.commandData, size + 2, reliableSequenceNumber);
+                Protocol.putShort(this.commandData, size + 4, reliableSequenceNumber);
+                Protocol.putShort(this.commandData, size + 6, (int) acknowledgement & 0xFFFF);
+                if ((int) (acknowledgement >>> 40) == Protocol.COMMAND_DISCONNECT) {
+                    acknowledgedDisconnect = true;
+                }
+                size += acknowledgeSize;
+                commandCount++;
+            }
+            if (acknowledged > 0) {
+                System.arraycopy(
+                        peer.acknowledgements, acknowledged,
+                        peer.acknowledgements, 0,
+                        peer.acknowledgementCount - acknowledged
+                );
+                peer.acknowledgementCount -= acknowledged;
+            }
+
+            final var windowSize = Math.max(peer.windowSize, peer.mtu);
+            while (!peer.outgoingReliableCommands.isEmpty()
+                    && commandCount < Protocol.MAXIMUM_PACKET_COMMANDS
+                    && peer.sentReliableCommands.size() < Protocol.PEER_RELIABLE_WINDOW_SIZE) {
+                final var command = peer.outgoingReliableCommands.peekFirst();
+                final var commandSize = command.headerSize() + command.fragmentLength;
+                if (size + commandSize > budget) {
+                    break;
+                }
+                if (command.packet != null && peer.reliableDataInTransit + command.fragmentLength > windowSize) {
+                    break;
+                }
+                peer.outgoingReliableCommands.pollFirst();
+
+                if (command.roundTripTimeout == 0) {
+                    command.roundTripTimeout = peer.roundTripTime + 4 * peer.roundTripTimeVariance;
+                    command.roundTripTimeoutLimit = peer.timeoutLimit * command.roundTripTimeout;
+                }
+                if (peer.sentReliableCommands.isEmpty()) {
+                    peer.nextTimeout = this.serviceTime + command.roundTripTimeout;
+                }
+                command.sendAttempts++;
+                command.sentTime = this.serviceTime;
+                if (command.packet != null) {
+                    peer.reliableDataInTransit += command.fragmentLength;
+                }
+                peer.sentReliableCommands.addLast(command);
+
+                size = this.writeCommand(command, size);
+                commandCount++;
+                sentTime = true;
+            }
+
+            while (!peer.outgoingUnreliableCommands.isEmpty()
+                    && commandCount < Protocol.MAXIMUM_PACKET_COMMANDS) {
+                final var command = peer.outgoingUnreliableCommands.peekFirst();
+                if (size + command.headerSize() + command.fragmentLength > budget) {
+                    break;
+                }
+                peer.outgoingUnreliableCommands.pollFirst();
+                peer.queuedData -= command.fragmentLength;
+                size = this.writeCommand(command, size);
+                commandCount++;
+                this.releaseCommand(command);
+            }
+
+            if (commandCount == 0) {
+                break;
+            }
+            this.sendDatagram(peer, size, sentTime);
+            if (acknowledgedDisconnect) {
+                peer.state = NioPeer.STATE_ZOMBIE;
+            }
+        }
+
+        if (peer.state == NioPeer.STATE_DISCONNECT_LATER && !peer.hasQueuedCommands()) {
+            peer.disconnect(peer.eventData);
+        }
+    }
+
+    private int writeCommand(OutgoingCommand command, int offset) {
+        final var headerSize = command.headerSize();
+        System.arraycopy(command.header, 0, this.commandData, offset, headerSize);
+        offset += headerSize;
+        if (command.packet != null) {
+            System.arraycopy(command.packet, command.fragmentOffset, this.commandData, offset, command.fragmentLength);
+            offset += command.fragmentLength;
+        }
+        return offset;
+    }
+
+    private void sendDatagram(NioPeer peer, int size, boolean sentTime) {
+        var headerFlags = sentTime ? Protocol.HEADER_FLAG_SENT_TIME : 0;
+        var headerSize = sentTime ? Protocol.HEADER_SIZE : 2;
+
+        var compressedSize = 0;
+        if (this.compressor != null) {
+            final var started = System.nanoTime();
+            compressedSize = this.compressor.compress(this.commandData, 0, size, this.compressedData, 0, size);
+            this.codecStats.recordCompress(size, compressedSize, System.nanoTime() - started);
+            if (compressedSize > 0 && compressedSize < size) {
+                headerFlags |= Protocol.HEADER_FLAG_COMPRESSED;
+            }
+            else {
+                compressedSize = 0;
+            }
+        }
+
+        if (peer.outgoingPeerID < Protocol.MAXIMUM_PEER_ID) {
+            headerFlags |= peer.outgoingSessionID << Protocol.HEADER_SESSION_SHIFT;
+        }
+        Protocol.putShort(this.headerData, 0, peer.outgoingPeerID | headerFlags);
+        if (sentTime) {
+            Protocol.putShort(this.headerData, 2, this.serviceTime & 0xFFFF);
+        }
+
+        if (this.checksum != null) {
+            Protocol.putInt(
+                    this.headerData,
+                    headerSize,
+                    peer.outgoingPeerID < Protocol.MAXIMUM_PEER_ID ? peer.connectID : 0
+            );
+            headerSize += Protocol.CHECKSUM_SIZE;
+            final var started = System.nanoTime();
+            this.checksum.reset();
+            this.checksum.update(this.headerData, 0, headerSize);
+            this.checksum.update(this.commandData, 0, size);
+            Protocol.putInt(this.headerData, headerSize - Protocol.CHECKSUM_SIZE, (int) this.checksum.getValue());
+            this.codecStats.recordChecksum(headerSize + size, System.nanoTime() - started);
+        }
+
+        this.sendBuffer.clear();
+        this.sendBuffer.put(this.headerData, 0, headerSize);
+        if (compressedSize > 0) {
+            this.sendBuffer.put(this.compressedData, 0, compressedSize);
+        }
+        else {
+            this.sendBuffer.put(this.commandData, 0, size);
+        }
+        this.sendBuffer.flip();
+        peer.outgoingDataTotal += this.sendBuffer.remaining();
+        try {
+            this.channel.send(this.sendBuffer, peer.address);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try (this.selector; this.channel) {
+            for (final var peer : this.peers) {
+                peer.reset();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
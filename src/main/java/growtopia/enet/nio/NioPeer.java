@@ -0,0 +1,423 @@
+package growtopia.enet.nio;
+
+import growtopia.enet.Enet;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A slot in a {@link NioHost}, mirroring ENetPeer. Slots are reused, so the handler is given a fresh
+ * {@link NioConnection} for each connection rather than the peer itself.
+ */
+public final class NioPeer {
+    static final int STATE_DISCONNECTED = 0;
+    static final int STATE_ACKNOWLEDGING_CONNECT = 2;
+    static final int STATE_CONNECTED = 5;
+    static final int STATE_DISCONNECT_LATER = 6;
+    static final int STATE_DISCONNECTING = 7;
+    static final int STATE_ACKNOWLEDGING_DISCONNECT = 8;
+    static final int STATE_ZOMBIE = 9;
+
+    final NioHost host;
+    final int incomingPeerID;
+    int outgoingPeerID;
+    int incomingSessionID = 0xFF;
+    int outgoingSessionID = 0xFF;
+    int connectID;
+    InetSocketAddress address;
+    int state;
+
+    /**
+     * Set once the handler has been told about the connection, and cleared when the slot is reset.
+     */
+    NioConnection connection;
+
+    Channel[] channels;
+    int channelCount;
+    int incomingBandwidth;
+    int outgoingBandwidth;
+    long incomingDataTotal;
+    long outgoingDataTotal;
+    int lastReceiveTime;
+    int nextTimeout;
+    int earliestTimeout;
+    int packetsLost;
+    int packetThrottleInterval;
+    int packetThrottleAcceleration;
+    int packetThrottleDeceleration;
+    int pingInterval;
+    int timeoutLimit;
+    int timeoutMinimum;
+    int timeoutMaximum;
+    int roundTripTime;
+    int roundTripTimeVariance;
+    int mtu;
+    int windowSize;
+    int reliableDataInTransit;
+    long queuedData;
+    long totalWaitingData;
+    int outgoingReliableSequenceNumber;
+    int incomingUnsequencedGroup;
+    int outgoingUnsequencedGroup;
+    final int[] unsequencedWindow = new int[Protocol.PEER_UNSEQUENCED_WINDOW_SIZE / 32];
+    int eventData;
+
+    final ArrayDeque<OutgoingCommand> outgoingReliableCommands = new ArrayDeque<>();
+    final ArrayDeque<OutgoingCommand> outgoingUnreliableCommands = new ArrayDeque<>();
+    final ArrayDeque<OutgoingCommand> sentReliableCommands = new ArrayDeque<>();
+
+    /**
+     * Pending acknowledgements, packed by {@link #acknowledgement}.
+     */
+    long[] acknowledgements = new long[16];
+    int acknowledgementCount;
+
+    NioPeer(NioHost host, int incomingPeerID) {
+        this.host = host;
+        this.incomingPeerID = incomingPeerID;
+        this.reset();
+    }
+
+    static long acknowledgement(int commandNumber, int channelID, int reliableSequenceNumber, int sentTime) {
+        return (long) commandNumber << 40
+                | (long) channelID << 32
+                | (long) reliableSequenceNumber << 16
+                | sentTime;
+    }
+
+    void queueAcknowledgement(int commandNumber, int channelID, int reliableSequenceNumber, int sentTime) {
+        if (this.acknowledgementCount == this.acknowledgements.length) {
+            this.acknowledgements = Arrays.copyOf(this.acknowledgements, this.acknowledgementCount * 2);
+        }
+        this.acknowledgements[this.acknowledgementCount++] =
+                acknowledgement(commandNumber, channelID, reliableSequenceNumber, sentTime);
+    }
+
+    void updateRoundTripTime(int roundTripTime) {
+        this.roundTripTimeVariance -= this.roundTripTimeVariance / 4;
+        if (roundTripTime >= this.roundTripTime) {
+            final var diff = roundTripTime - this.roundTripTime;
+            this.roundTripTimeVariance += diff / 4;
+            this.roundTripTime += diff / 8;
+        }
+        else {
+            final var diff = this.roundTripTime - roundTripTime;
+            this.roundTripTimeVariance += diff / 4;
+            this.roundTripTime -= diff / 8;
+        }
+    }
+
+    void resetQueues() {
+        this.outgoingReliableCommands.forEach(this.host::releaseCommand);
+        this.outgoingReliableCommands.clear();
+        this.outgoingUnreliableCommands.forEach(this.host::releaseCommand);
+        this.outgoingUnreliableCommands.clear();
+        this.sentReliableCommands.forEach(this.host::releaseCommand);
+        this.sentReliableCommands.clear();
+        this.acknowledgementCount = 0;
+        this.queuedData = 0;
+        this.totalWaitingData = 0;
+        this.channels = null;
+        this.channelCount = 0;
+    }
+
+    void reset() {
+        this.outgoingPeerID = Protocol.MAXIMUM_PEER_ID;
+        this.connectID = 0;
+        this.state = STATE_DISCONNECTED;
+        this.connection = null;
+        this.incomingBandwidth = 0;
+        this.outgoingBandwidth = 0;
+        this.incomingDataTotal = 0;
+        this.outgoingDataTotal = 0;
+        this.lastReceiveTime = 0;
+        this.nextTimeout = 0;
+        this.earliestTimeout = 0;
+        this.packetsLost = 0;
+        this.packetThrottleInterval = Protocol.PEER_PACKET_THROTTLE_INTERVAL;
+        this.packetThrottleAcceleration = Protocol.PEER_PACKET_THROTTLE_ACCELERATION;
+        this.packetThrottleDeceleration = Protocol.PEER_PACKET_THROTTLE_DECELERATION;
+        this.pingInterval = Protocol.PEER_PING_INTERVAL;
+        this.timeoutLimit = Protocol.PEER_TIMEOUT_LIMIT;
+        this.timeoutMinimum = Protocol.PEER_TIMEOUT_MINIMUM;
+        this.timeoutMaximum = Protocol.PEER_TIMEOUT_MAXIMUM;
+        this.roundTripTime = Protocol.PEER_DEFAULT_ROUND_TRIP_TIME;
+        this.roundTripTimeVariance = 0;
+        this.mtu = this.host.mtu;
+        this.windowSize = Protocol.MAXIMUM_WINDOW_SIZE;
+        this.reliableDataInTransit = 0;
+        this.outgoingReliableSequenceNumber = 0;
+        this.incomingUnsequencedGroup = 0;
+        this.outgoingUnsequencedGroup = 0;
+        this.eventData = 0;
+        Arrays.fill(this.unsequencedWindow, 0);
+        this.resetQueues();
+    }
+
+    /**
+     * Assigns sequence numbers to a command and queues it, as enet_peer_setup_outgoing_command does.
+     */
+    void queueOutgoingCommand(OutgoingCommand command) {
+        this.outgoingDataTotal += command.headerSize() + command.fragmentLength;
+        this.queuedData += command.fragmentLength;
+
+        if (command.channelID == 0xFF) {
+            this.outgoingReliableSequenceNumber = (this.outgoingReliableSequenceNumber + 1) & 0xFFFF;
+            command.reliableSequenceNumber = this.outgoingReliableSequenceNumber;
+            command.unreliableSequenceNumber = 0;
+        }
+        else if ((command.command & Protocol.COMMAND_FLAG_ACKNOWLEDGE) != 0) {
+            final var channel = this.channels[command.channelID];
+            channel.outgoingReliableSequenceNumber = (channel.outgoingReliableSequenceNumber + 1) & 0xFFFF;
+            channel.outgoingUnreliableSequenceNumber = 0;
+            command.reliableSequenceNumber = channel.outgoingReliableSequenceNumber;
+            command.unreliableSequenceNumber = 0;
+        }
+        else if ((command.command & Protocol.COMMAND_FLAG_UNSEQUENCED) != 0) {
+            this.outgoingUnsequencedGroup = (this.outgoingUnsequencedGroup + 1) & 0xFFFF;
+            command.reliableSequenceNumber = 0;
+            command.unreliableSequenceNumber = 0;
+        }
+        else {
+            final var channel = this.channels[command.channelID];
+            if (command.fragmentOffset == 0) {
+                channel.outgoingUnreliableSequenceNumber = (channel.outgoingUnreliableSequenceNumber + 1) & 0xFFFF;
+            }
+            command.reliableSequenceNumber = channel.outgoingReliableSequenceNumber;
+            command.unreliableSequenceNumber = channel.outgoingUnreliableSequenceNumber;
+        }
+
+        command.sendAttempts = 0;
+        command.sentTime = 0;
+        command.roundTripTimeout = 0;
+        command.roundTripTimeoutLimit = 0;
+        Protocol.putShort(command.header, 2, command.reliableSequenceNumber);
+
+        switch (command.commandNumber()) {
+            case Protocol.COMMAND_SEND_UNRELIABLE -> Protocol.putShort(command.header, 4, command.unreliableSequenceNumber);
+            case Protocol.COMMAND_SEND_UNSEQUENCED -> Protocol.putShort(command.header, 4, this.outgoingUnsequencedGroup);
+            default -> {}
+        }
+
+        if ((command.command & Protocol.COMMAND_FLAG_ACKNOWLEDGE) != 0) {
+            this.outgoingReliableCommands.addLast(command);
+        }
+        else {
+            this.outgoingUnreliableCommands.addLast(command);
+        }
+    }
+
+    /**
+     * Drops the acknowledged command from the sent queue, returning its command number, or
+     * {@link Protocol#COMMAND_NONE} if nothing matched.
+     */
+    int removeSentReliableCommand(int reliableSequenceNumber, int channelID) {
+        final var iterator = this.sentReliableCommands.iterator();
+        while (iterator.hasNext()) {
+            final var command = iterator.next();
+            if (command.reliableSequenceNumber == reliableSequenceNumber && command.channelID == channelID) {
+                iterator.remove();
+                final var commandNumber = command.commandNumber();
+                if (command.packet != null) {
+                    this.reliableDataInTransit -= command.fragmentLength;
+                }
+                this.queuedData -= command.fragmentLength;
+                this.host.releaseCommand(command);
+                if (!this.sentReliableCommands.isEmpty()) {
+                    final var first = this.sentReliableCommands.peekFirst();
+                    this.nextTimeout = first.sentTime + first.roundTripTimeout;
+                }
+                return commandNumber;
+            }
+        }
+        return Protocol.COMMAND_NONE;
+    }
+
+    boolean hasQueuedCommands() {
+        return !this.outgoingReliableCommands.isEmpty()
+                || !this.outgoingUnreliableCommands.isEmpty()
+                || !this.sentReliableCommands.isEmpty();
+    }
+
+    void ping() {
+        if (this.state != STATE_CONNECTED) {
+            return;
+        }
+        this.queueOutgoingCommand(this.host.acquireCommand().set(
+                Protocol.COMMAND_PING | Protocol.COMMAND_FLAG_ACKNOWLEDGE, 0xFF, null, 0, 0
+        ));
+    }
+
+    /**
+     * Queues a packet on a channel, fragmenting it if it does not fit in one datagram. Flags are libenet's
+     * ENET_PACKET_FLAG_* bits.
+     */
+    boolean send(int channelID, byte[] data, int flags) {
+        if (this.state != STATE_CONNECTED
+                || channelID >= this.channelCount
+                || data.length > this.host.maximumPacketSize) {
+            return false;
+        }
+
+        final var channel = this.channels[channelID];
+        var fragmentLength = this.mtu - Protocol.HEADER_SIZE - Protocol.COMMAND_SIZES[Protocol.COMMAND_SEND_FRAGMENT];
+        if (this.host.checksumEnabled()) {
+            fragmentLength -= Protocol.CHECKSUM_SIZE;
+        }
+
+        if (data.length > fragmentLength) {
+            final var fragmentCount = (data.length + fragmentLength - 1) / fragmentLength;
+            if (fragmentCount > Protocol.MAXIMUM_FRAGMENT_COUNT) {
+                return false;
+            }
+            final var startSequenceNumber = (channel.outgoingReliableSequenceNumber + 1) & 0xFFFF;
+            for (int fragmentNumber = 0, fragmentOffset = 0;
+                 fragmentOffset < data.length;
+                 fragmentNumber++, fragmentOffset += fragmentLength) {
+                final var length = Math.min(fragmentLength, data.length - fragmentOffset);
+                final var command = this.host.acquireCommand().set(
+                        Protocol.COMMAND_SEND_FRAGMENT | Protocol.COMMAND_FLAG_ACKNOWLEDGE,
+                        channelID,
+                        data,
+                        fragmentOffset,
+                        length
+                );
+                Protocol.putShort(command.header, 4, startSequenceNumber);
+                Protocol.putShort(command.header, 6, length);
+                Protocol.putInt(command.header, 8, fragmentCount);
+                Protocol.putInt(command.header, 12, fragmentNumber);
+                Protocol.putInt(command.header, 16, data.length);
+                Protocol.putInt(command.header, 20, fragmentOffset);
+                this.queueOutgoingCommand(command);
+            }
+            return true;
+        }
+
+        final var command = this.host.acquireCommand();
+        if ((flags & (NioHost.PACKET_FLAG_RELIABLE | NioHost.PACKET_FLAG_UNSEQUENCED)) == NioHost.PACKET_FLAG_UNSEQUENCED) {
+            command.set(
+                    Protocol.COMMAND_SEND_UNSEQUENCED | Protocol.COMMAND_FLAG_UNSEQUENCED,
+                    channelID, data, 0, data.length
+            );
+            Protocol.putShort(command.header, 6, data.length);
+        }
+        else if ((flags & NioHost.PACKET_FLAG_RELIABLE) != 0 || channel.outgoingUnreliableSequenceNumber >= 0xFFFF) {
+            command.set(
+                    Protocol.COMMAND_SEND_RELIABLE | Protocol.COMMAND_FLAG_ACKNOWLEDGE,
+                    channelID, data, 0, data.length
+            );
+            Protocol.putShort(command.header, 4, data.length);
+        }
+        else {
+            command.set(Protocol.COMMAND_SEND_UNRELIABLE, channelID, data, 0, data.length);
+            Protocol.putShort(command.header, 6, data.length);
+        }
+        this.queueOutgoingCommand(command);
+        return true;
+    }
+
+    public int connectID() {
+        return this.connectID;
+    }
+
+    public int reliableDataInTransit() {
+        return this.reliableDataInTransit;
+    }
+
+    public int windowSize() {
+        return this.windowSize;
+    }
+
+    public long totalWaitingData() {
+        return this.totalWaitingData;
+    }
+
+    public Enet.Address address() {
+        return NioHost.toEnetAddress(this.address);
+    }
+
+    public boolean send(Enet.Packet packet) {
+        var flags = 0;
+        for (final var flag : packet.flags()) {
+            flags |= switch (flag) {
+                case RELIABLE -> NioHost.PACKET_FLAG_RELIABLE;
+                case UNSEQUENCED -> NioHost.PACKET_FLAG_UNSEQUENCED;
+            };
+        }
+        return this.send(0, packet.data(), flags);
+    }
+
+    /**
+     * Asks the remote end to disconnect. The handler is told once it acknowledges, or once it times out.
+     */
+    public void disconnect(int data) {
+        if (this.state == STATE_DISCONNECTING
+                || this.state == STATE_DISCONNECTED
+                || this.state == STATE_ACKNOWLEDGING_DISCONNECT
+                || this.state == STATE_ZOMBIE) {
+            return;
+        }
+
+        this.resetQueues();
+
+        final var connected = this.state == STATE_CONNECTED || this.state == STATE_DISCONNECT_LATER;
+        final var command = this.host.acquireCommand().set(
+                Protocol.COMMAND_DISCONNECT
+                        | (connected ? Protocol.COMMAND_FLAG_ACKNOWLEDGE : Protocol.COMMAND_FLAG_UNSEQUENCED),
+                0xFF, null, 0, 0
+        );
+        Protocol.putInt(command.header, 4, data);
+        this.queueOutgoingCommand(command);
+
+        if (connected) {
+            this.state = STATE_DISCONNECTING;
+        }
+        else {
+            this.host.flush(this);
+            this.reset();
+        }
+    }
+
+    /**
+     * Tells the remote end to go away without waiting for it to acknowledge, as enet_peer_disconnect_now does, but
+     * leaves resetting the peer to the host, so that the handler can be told.
+     */
+    void sendDisconnectNow(int data) {
+        if (this.state == STATE_DISCONNECTED
+                || this.state == STATE_DISCONNECTING
+                || this.state == STATE_ZOMBIE) {
+            return;
+        }
+
+        this.resetQueues();
+        final var command = this.host.acquireCommand().set(
+                Protocol.COMMAND_DISCONNECT | Protocol.COMMAND_FLAG_UNSEQUENCED,
+                0xFF, null, 0, 0
+        );
+        Protocol.putInt(command.header, 4, data);
+        this.queueOutgoingCommand(command);
+        this.host.flush(this);
+    }
+
+    /**
+     * Disconnects once everything already queued has been sent and acknowledged.
+     */
+    public void disconnectLater(int data) {
+        if ((this.state == STATE_CONNECTED || this.state == STATE_DISCONNECT_LATER) && this.hasQueuedCommands()) {
+            this.state = STATE_DISCONNECT_LATER;
+            this.eventData = data;
+        }
+        else {
+            this.disconnect(data);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NioPeer[" +
+                "incomingPeerID=" + this.incomingPeerID +
+                ", connectID=" + this.connectID +
+                ", address=" + this.address +
+                ']';
+    }
+}
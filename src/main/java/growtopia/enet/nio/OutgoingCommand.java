@@ -0,0 +1,50 @@
+package growtopia.enet.nio;
+
+/**
+ * A command waiting to be sent, or sent and waiting to be acknowledged. The command struct is kept encoded so
+ * that retransmitting it is a copy. Instances are pooled by the host.
+ */
+final class OutgoingCommand {
+    final byte[] header = new byte[Protocol.COMMAND_SIZES[Protocol.COMMAND_CONNECT]];
+
+    int command;
+    int channelID;
+    int reliableSequenceNumber;
+    int unreliableSequenceNumber;
+    int sentTime;
+    int roundTripTimeout;
+    int roundTripTimeoutLimit;
+    int sendAttempts;
+
+    byte[] packet;
+    int fragmentOffset;
+    int fragmentLength;
+
+    OutgoingCommand() {}
+
+    int commandNumber() {
+        return this.command & Protocol.COMMAND_MASK;
+    }
+
+    int headerSize() {
+        return Protocol.COMMAND_SIZES[this.commandNumber()];
+    }
+
+    /**
+     * Fills in the fields shared by every command. The caller writes the rest of the struct into {@link #header}.
+     */
+    OutgoingCommand set(int command, int channelID, byte[] packet, int fragmentOffset, int fragmentLength) {
+        this.command = command;
+        this.channelID = channelID;
+        this.packet = packet;
+        this.fragmentOffset = fragmentOffset;
+        this.fragmentLength = fragmentLength;
+        this.header[0] = (byte) command;
+        this.header[1] = (byte) channelID;
+        return this;
+    }
+
+    void clear() {
+        this.packet = null;
+    }
+}
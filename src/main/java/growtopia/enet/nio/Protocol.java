@@ -0,0 +1,115 @@
+package growtopia.enet.nio;
+
+/**
+ * Constants from libenet's protocol.h and enet.h, along with big endian accessors for the wire format.
+ */
+final class Protocol {
+    private Protocol() {}
+
+    static final int MINIMUM_MTU = 576;
+    static final int MAXIMUM_MTU = 4096;
+    static final int MAXIMUM_PACKET_COMMANDS = 32;
+    static final int MINIMUM_WINDOW_SIZE = 4096;
+    static final int MAXIMUM_WINDOW_SIZE = 65536;
+    static final int MINIMUM_CHANNEL_COUNT = 1;
+    static final int MAXIMUM_CHANNEL_COUNT = 255;
+    static final int MAXIMUM_PEER_ID = 0xFFF;
+    static final int MAXIMUM_FRAGMENT_COUNT = 1024 * 1024;
+
+    static final int COMMAND_NONE = 0;
+    static final int COMMAND_ACKNOWLEDGE = 1;
+    static final int COMMAND_CONNECT = 2;
+    static final int COMMAND_VERIFY_CONNECT = 3;
+    static final int COMMAND_DISCONNECT = 4;
+    static final int COMMAND_PING = 5;
+    static final int COMMAND_SEND_RELIABLE = 6;
+    static final int COMMAND_SEND_UNRELIABLE = 7;
+    static final int COMMAND_SEND_FRAGMENT = 8;
+    static final int COMMAND_SEND_UNSEQUENCED = 9;
+    static final int COMMAND_BANDWIDTH_LIMIT = 10;
+    static final int COMMAND_THROTTLE_CONFIGURE = 11;
+    static final int COMMAND_SEND_UNRELIABLE_FRAGMENT = 12;
+    static final int COMMAND_COUNT = 13;
+    static final int COMMAND_MASK = 0x0F;
+
+    static final int COMMAND_FLAG_ACKNOWLEDGE = 1 << 7;
+    static final int COMMAND_FLAG_UNSEQUENCED = 1 << 6;
+
+    static final int HEADER_FLAG_COMPRESSED = 1 << 14;
+    static final int HEADER_FLAG_SENT_TIME = 1 << 15;
+    static final int HEADER_FLAG_MASK = HEADER_FLAG_COMPRESSED | HEADER_FLAG_SENT_TIME;
+    static final int HEADER_SESSION_MASK = 3 << 12;
+    static final int HEADER_SESSION_SHIFT = 12;
+
+    /**
+     * Size of ENetProtocolHeader with the sent time. Without it the header is only the peer id.
+     */
+    static final int HEADER_SIZE = 4;
+    static final int CHECKSUM_SIZE = 4;
+
+    /**
+     * Size of each command struct, indexed by command number.
+     */
+    static final int[] COMMAND_SIZES = {0, 8, 48, 44, 8, 4, 6, 8, 24, 8, 12, 16, 24};
+
+    static final int HOST_DEFAULT_MTU = 1400;
+    static final int HOST_DEFAULT_MAXIMUM_PACKET_SIZE = 32 * 1024 * 1024;
+    static final int HOST_DEFAULT_MAXIMUM_WAITING_DATA = 32 * 1024 * 1024;
+
+    static final int PEER_DEFAULT_ROUND_TRIP_TIME = 500;
+    static final int PEER_DEFAULT_PACKET_THROTTLE = 32;
+    static final int PEER_PACKET_THROTTLE_ACCELERATION = 2;
+    static final int PEER_PACKET_THROTTLE_DECELERATION = 2;
+    static final int PEER_PACKET_THROTTLE_INTERVAL = 5000;
+    static final int PEER_WINDOW_SIZE_SCALE = 64 * 1024;
+    static final int PEER_TIMEOUT_LIMIT = 32;
+    static final int PEER_TIMEOUT_MINIMUM = 5000;
+    static final int PEER_TIMEOUT_MAXIMUM = 30000;
+    static final int PEER_PING_INTERVAL = 500;
+    static final int PEER_UNSEQUENCED_WINDOW_SIZE = 1024;
+    static final int PEER_FREE_UNSEQUENCED_WINDOWS = 32;
+    static final int PEER_RELIABLE_WINDOWS = 16;
+    static final int PEER_RELIABLE_WINDOW_SIZE = 0x1000;
+    static final int PEER_FREE_RELIABLE_WINDOWS = 8;
+
+    /**
+     * Service times are 32 bit millisecond counters that wrap; anything further apart than a day is taken to have
+     * wrapped around.
+     */
+    static final int TIME_OVERFLOW = 86400000;
+
+    static boolean timeLess(int a, int b) {
+        return Integer.compareUnsigned(a - b, TIME_OVERFLOW) >= 0;
+    }
+
+    static int timeDifference(int a, int b) {
+        return timeLess(a, b) ? b - a : a - b;
+    }
+
+    static int getUnsignedByte(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    static int getUnsignedShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24
+                | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8
+                | (data[offset + 3] & 0xFF);
+    }
+
+    static void putShort(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,6 @@
+package growtopia.login;
+
+/**
+ * A registered player, as far as logging in is concerned.
+ */
+public record Account(long id, String name, byte[] salt, byte[] passwordHash) {}
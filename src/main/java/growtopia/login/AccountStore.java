@@ -0,0 +1,16 @@
+package growtopia.login;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Where accounts live. Called off the service thread, with as many names at once as are waiting, so that a
+ * storm of logins costs one round trip per batch rather than one per player.
+ */
+public interface AccountStore {
+    /**
+     * Loads every account with one of the given names, keyed by the name as given. Names are not case sensitive,
+     * and names without an account are left out.
+     */
+    Map<String, Account> load(Collection<String> names);
+}
@@ -0,0 +1,30 @@
+package growtopia.login;
+
+/**
+ * Limits for an {@link AdmissionHandler}.
+ *
+ * @param queueCapacity       how many logins may wait to be admitted. Clients beyond that are told the server is
+ *                            full and disconnected.
+ * @param admissionsPerSecond the steady rate at which logins leave the queue for verification
+ * @param burst               how many logins may leave the queue at once after a quiet spell
+ * @param loadBatchSize       the most accounts loaded in one call to the {@link AccountStore}
+ * @param maximumInFlight     the most logins being verified at once, however far ahead the rate allows
+ * @param verifierThreads     threads hashing passwords
+ */
+public record AdmissionConfig(
+        int queueCapacity,
+        double admissionsPerSecond,
+        int burst,
+        int loadBatchSize,
+        int maximumInFlight,
+        int verifierThreads
+) {
+    public static final AdmissionConfig DEFAULT = new AdmissionConfig(
+            4096,
+            200,
+            50,
+            64,
+            256,
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1)
+    );
+}
@@ -0,0 +1,333 @@
+package growtopia.login;
+
+import growtopia.protocol.Messages;
+import growtopia.transport.Connection;
+import growtopia.transport.ConnectionHandler;
+import growtopia.transport.Delivery;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps logins off the service thread and out of the game until they are verified.
+ *
+ * Logins wait in a bounded first come, first served queue, and leave it at a steady rate for verification. Their
+ * accounts are loaded in batches, one {@link AccountStore} call each, on a loader thread, and their passwords are
+ * then checked on a pool of verifier threads. Verdicts come back to the service thread the next time the
+ * transport goes idle. Only then does the wrapped handler hear about the connection, so a storm of reconnects
+ * costs the players already online nothing but the queue bookkeeping.
+ *
+ * Queued clients are told their place in line when they arrive and every {@link #POSITION_INTERVAL_NANOS}.
+ * Anything they send before being admitted, other than the login itself, is dropped.
+ */
+public final class AdmissionHandler implements ConnectionHandler, AutoCloseable {
+    static final long POSITION_INTERVAL_NANOS = 5_000_000_000L;
+
+    private enum Stage { CONNECTED, QUEUED, VERIFYING, ADMITTED, REJECTED }
+
+    private static final class Applicant {
+        private final Connection connection;
+        private Stage stage = Stage.CONNECTED;
+        private byte[] login;
+        private String name;
+        private String password;
+        private Account account;
+
+        private Applicant(Connection connection) {
+            this.connection = connection;
+        }
+
+        private boolean isGuest() {
+            return this.name.isEmpty();
+        }
+    }
+
+    private record Verdict(Applicant applicant, Account account, String rejection) {}
+
+    private final ConnectionHandler handler;
+    private final AccountStore accounts;
+    private final PasswordHasher hasher;
+    private final AdmissionConfig config;
+    private final ExecutorService loader;
+    private final ExecutorService verifiers;
+
+    private final HashMap<Connection, Applicant> applicants = new HashMap<>();
+    private final ArrayDeque<Applicant> queue = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<Applicant> loading = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Verdict> verdicts = new ConcurrentLinkedQueue<>();
+    private int queued = 0;
+    private int inFlight = 0;
+    private double tokens;
+    private long refilledNanos = System.nanoTime();
+    private long positionsSentNanos = System.nanoTime();
+
+    public AdmissionHandler(ConnectionHandler handler,
+                            AccountStore accounts,
+                            PasswordHasher hasher,
+                            AdmissionConfig config) {
+        this.handler = handler;
+        this.accounts = accounts;
+        this.hasher = hasher;
+        this.config = config;
+        this.tokens = config.burst();
+        this.loader = Executors.newSingleThreadExecutor(daemon("admission-loader"));
+        this.verifiers = Executors.newFixedThreadPool(config.verifierThreads(), daemon("admission-verifier"));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        final var count = new AtomicInteger();
+        return runnable -> {
+            final var thread = new Thread(runnable, name + '-' + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * The account a connection logged in with, or null for guests and connections not admitted yet.
+     */
+    public Account account(Connection connection) {
+        final var applicant = this.applicants.get(connection);
+        return applicant == null ? null : applicant.account;
+    }
+
+    /**
+     * How many logins are waiting to be verified.
+     */
+    public int queued() {
+        return this.queued;
+    }
+
+    private static void log(Connection connection, String message) {
+        connection.send(Messages.text(Messages.GAME_MESSAGE, "action|log\nmsg|" + message), Delivery.RELIABLE);
+    }
+
+    private void sendPositions() {
+        var position = 0;
+        for (final var applicant : this.queue) {
+            if (applicant.stage == Stage.QUEUED) {
+                log(applicant.connection, "Server busy, you are number " + ++position + " in line.");
+            }
+        }
+        this.positionsSentNanos = System.nanoTime();
+    }
+
+    private void enqueue(Applicant applicant, byte[] data) {
+        if (this.queued >= this.config.queueCapacity()) {
+            applicant.stage = Stage.REJECTED;
+            log(applicant.connection, "Server full, please try again in a few minutes.");
+            applicant.connection.disconnect();
+            return;
+        }
+
+        final var fields = Messages.text(data);
+        applicant.login = data;
+        applicant.name = fields.getOrDefault("tankIDName", "");
+        applicant.password = fields.getOrDefault("tankIDPass", "");
+        applicant.stage = Stage.QUEUED;
+        if (this.queue.size() >= 2 * this.config.queueCapacity()) {
+            // Drop the entries of clients that gave up waiting, so they can't pile up while admission is stalled.
+            this.queue.removeIf(waiting -> waiting.stage != Stage.QUEUED);
+        }
+        this.queue.addLast(applicant);
+        this.queued++;
+
+        this.admit();
+        if (applicant.stage == Stage.QUEUED) {
+            log(applicant.connection, "Server busy, you are number " + this.queued + " in line.");
+        }
+    }
+
+    /**
+     * Lets as many logins out of the queue as the rate and the in flight limit allow.
+     */
+    private void admit() {
+        final var now = System.nanoTime();
+        this.tokens = Math.min(
+                this.config.burst(),
+                this.tokens + (now - this.refilledNanos) * this.config.admissionsPerSecond() / 1_000_000_000.0
+        );
+        this.refilledNanos = now;
+
+        final var batch = new ArrayList<Applicant>();
+        while (this.tokens >= 1 && this.inFlight < this.config.maximumInFlight() && !this.queue.isEmpty()) {
+            final var applicant = this.queue.pollFirst();
+            if (applicant.stage != Stage.QUEUED) {
+                continue;
+            }
+            this.queued--;
+            this.tokens--;
+            this.inFlight++;
+            applicant.stage = Stage.VERIFYING;
+            batch.add(applicant);
+        }
+        if (!batch.isEmpty()) {
+            this.verify(batch);
+        }
+    }
+
+    private void verify(List<Applicant> batch) {
+        this.loading.addAll(batch);
+        try {
+            this.loader.execute(this::loadPending);
+        } catch (RejectedExecutionException e) {
+            // Closed, so nothing is left to load them. Every applicant still needs a verdict to leave the in flight
+            // count.
+            Applicant applicant;
+            while ((applicant = this.loading.poll()) != null) {
+                this.verdicts.add(new Verdict(applicant, null, "Could not load your account, try again later."));
+            }
+        }
+    }
+
+    /**
+     * Runs on the loader thread. Takes everything waiting to be loaded, up to a batch at a time, so that logins
+     * coalesce into bigger batches whenever the account store is slower than the admission rate.
+     */
+    private void loadPending() {
+        while (!this.loading.isEmpty()) {
+            final var batch = new ArrayList<Applicant>();
+            final var names = new ArrayList<String>();
+            Applicant next;
+            while (batch.size() < this.config.loadBatchSize() && (next = this.loading.poll()) != null) {
+                batch.add(next);
+                if (!next.isGuest()) {
+                    names.add(next.name);
+                }
+            }
+
+            final Map<String, Account> loaded;
+            try {
+                loaded = names.isEmpty() ? Map.of() : this.accounts.load(names);
+            } catch (RuntimeException e) {
+                for (final var applicant : batch) {
+                    this.verdicts.add(new Verdict(applicant, null, "Could not load your account, try again later."));
+                }
+                continue;
+            }
+
+            for (final var applicant : batch) {
+                if (applicant.isGuest()) {
+                    this.verdicts.add(new Verdict(applicant, null, null));
+                    continue;
+                }
+                final var account = loaded.get(applicant.name);
+                if (account == null) {
+                    this.verdicts.add(new Verdict(applicant, null, "No account named " + applicant.name + "."));
+                    continue;
+                }
+                try {
+                    this.verifiers.execute(() -> this.verdicts.add(this.check(applicant, account)));
+                } catch (RejectedExecutionException e) {
+                    this.verdicts.add(new Verdict(applicant, null, "Could not check your password, try again later."));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs on a verifier thread. Always comes up with a verdict, even if the stored hash can't be checked.
+     */
+    private Verdict check(Applicant applicant, Account account) {
+        try {
+            return this.hasher.verify(applicant.password, account)
+                    ? new Verdict(applicant, account, null)
+                    : new Verdict(applicant, null, "Wrong password.");
+        } catch (RuntimeException e) {
+            return new Verdict(applicant, null, "Could not check your password, try again later.");
+        }
+    }
+
+    private void collectVerdicts() {
+        Verdict verdict;
+        while ((verdict = this.verdicts.poll()) != null) {
+            this.inFlight--;
+            final var applicant = verdict.applicant();
+            applicant.password = null;
+            if (this.applicants.get(applicant.connection) != applicant) {
+                continue;
+            }
+
+            if (verdict.rejection() != null) {
+                applicant.stage = Stage.REJECTED;
+                applicant.login = null;
+                log(applicant.connection, verdict.rejection());
+                applicant.connection.disconnect();
+                continue;
+            }
+
+            applicant.stage = Stage.ADMITTED;
+            applicant.account = verdict.account();
+            final var login = applicant.login;
+            applicant.login = null;
+            this.handler.onConnect(applicant.connection);
+            this.handler.onReceive(applicant.connection, login);
+        }
+    }
+
+    @Override
+    public void onConnect(Connection connection) {
+        this.applicants.put(connection, new Applicant(connection));
+        connection.send(Messages.empty(Messages.SERVER_HELLO), Delivery.RELIABLE);
+    }
+
+    @Override
+    public void onReceive(Connection connection, byte[] data) {
+        final var applicant = this.applicants.computeIfAbsent(connection, Applicant::new);
+        switch (applicant.stage) {
+            case ADMITTED -> this.handler.onReceive(connection, data);
+            case CONNECTED -> {
+                if (Messages.type(data) == Messages.GENERIC_TEXT) {
+                    this.enqueue(applicant, data);
+                }
+            }
+            default -> {}
+        }
+    }
+
+    @Override
+    public void onDisconnect(Connection connection) {
+        final var applicant = this.applicants.remove(connection);
+        if (applicant == null) {
+            return;
+        }
+        switch (applicant.stage) {
+            case QUEUED -> {
+                // Left in the queue and skipped when it comes up.
+                applicant.stage = Stage.REJECTED;
+                this.queued--;
+            }
+            case ADMITTED -> this.handler.onDisconnect(connection);
+            default -> {}
+        }
+    }
+
+    @Override
+    public void onIdle() {
+        this.collectVerdicts();
+        this.admit();
+        if (this.queued > 0 && System.nanoTime() - this.positionsSentNanos >= POSITION_INTERVAL_NANOS) {
+            this.sendPositions();
+        }
+        this.handler.onIdle();
+    }
+
+    @Override
+    public void onStop() {
+        this.handler.onStop();
+    }
+
+    @Override
+    public void close() {
+        this.loader.shutdownNow();
+        this.verifiers.shutdownNow();
+    }
+}
@@ -0,0 +1,104 @@
+package growtopia.login;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts kept in memory, for running a server without a database. They can be carried across restarts with
+ * {@link #snapshot()} and {@link #restore(ByteBuffer)}.
+ */
+public final class InMemoryAccountStore implements AccountStore {
+    /**
+     * The longest name, salt or password hash a {@link #snapshot()} can hold.
+     */
+    private static final int MAXIMUM_FIELD_LENGTH = 0xFFFF;
+
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    public Account create(String name, String password, PasswordHasher hasher) {
+        if (name.getBytes(StandardCharsets.UTF_8).length > MAXIMUM_FIELD_LENGTH) {
+            throw new IllegalArgumentException("Account name too long");
+        }
+        final var salt = hasher.salt();
+        final var account = new Account(this.nextId.incrementAndGet(), name, salt, hasher.hash(password, salt));
+        if (this.accounts.putIfAbsent(name.toLowerCase(Locale.ROOT), account) != null) {
+            throw new IllegalArgumentException("Account " + name + " already exists");
+        }
+        return account;
+    }
+
+    /**
+     * Every account, encoded for {@link #restore(ByteBuffer)}: a count, then each account's id followed by its name,
+     * salt and password hash, each with a short length in front. Accounts with a field too long for that are left
+     * out.
+     */
+    public byte[] snapshot() {
+        final var accounts = new ArrayList<Account>(this.accounts.size());
+        final var names = new ArrayList<byte[]>(this.accounts.size());
+        var size = 4;
+        for (final var account : this.accounts.values()) {
+            final var name = account.name().getBytes(StandardCharsets.UTF_8);
+            if (name.length > MAXIMUM_FIELD_LENGTH
+                    || account.salt().length > MAXIMUM_FIELD_LENGTH
+                    || account.passwordHash().length > MAXIMUM_FIELD_LENGTH) {
+                continue;
+            }
+            accounts.add(account);
+            names.add(name);
+            size += 8 + 2 + name.length + 2 + account.salt().length + 2 + account.passwordHash().length;
+        }
+
+        final var buffer = ByteBuffer.allocate(size).putInt(accounts.size());
+        for (var i = 0; i < accounts.size(); i++) {
+            final var account = accounts.get(i);
+            buffer.putLong(account.id())
+                    .putShort((short) names.get(i).length)
+                    .put(names.get(i))
+                    .putShort((short) account.salt().length)
+                    .put(account.salt())
+                    .putShort((short) account.passwordHash().length)
+                    .put(account.passwordHash());
+        }
+        return buffer.array();
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        final var bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Adds the accounts from a {@link #snapshot()}, replacing any with the same name.
+     */
+    public void restore(ByteBuffer snapshot) {
+        final var count = snapshot.getInt();
+        for (var i = 0; i < count; i++) {
+            final var id = snapshot.getLong();
+            final var name = new String(getBytes(snapshot), StandardCharsets.UTF_8);
+            final var account = new Account(id, name, getBytes(snapshot), getBytes(snapshot));
+            this.accounts.put(name.toLowerCase(Locale.ROOT), account);
+            this.nextId.accumulateAndGet(id, Math::max);
+        }
+    }
+
+    @Override
+    public Map<String, Account> load(Collection<String> names) {
+        final var found = new HashMap<String, Account>();
+        for (final var name : names) {
+            final var account = this.accounts.get(name.toLowerCase(Locale.ROOT));
+            if (account != null) {
+                found.put(name, account);
+            }
+        }
+        return found;
+    }
+}
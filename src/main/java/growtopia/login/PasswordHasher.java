@@ -0,0 +1,49 @@
+package growtopia.login;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PBKDF2 password hashing. Deliberately slow, which is why {@link AdmissionHandler} never runs it on the service
+ * thread.
+ */
+public final class PasswordHasher {
+    public static final int DEFAULT_ITERATIONS = 100_000;
+    private static final int SALT_SIZE = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    public PasswordHasher(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public PasswordHasher() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    public byte[] salt() {
+        final var salt = new byte[SALT_SIZE];
+        this.random.nextBytes(salt);
+        return salt;
+    }
+
+    public byte[] hash(String password, byte[] salt) {
+        final var spec = new PBEKeySpec(password.toCharArray(), salt, this.iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    public boolean verify(String password, Account account) {
+        return MessageDigest.isEqual(this.hash(password, account.salt()), account.passwordHash());
+    }
+}
@@ -0,0 +1,83 @@
+package growtopia.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The framing the game client puts around everything it sends: a little endian int message type, followed by
+ * either {@code key|value} lines of text or a binary game packet.
+ */
+public final class Messages {
+    private Messages() {}
+
+    public static final int SERVER_HELLO = 1;
+    public static final int GENERIC_TEXT = 2;
+    public static final int GAME_MESSAGE = 3;
+    public static final int GAME_PACKET = 4;
+
+    static final int TYPE_SIZE = 4;
+
+    /**
+     * The message type, or -1 if the data is too short to have one.
+     */
+    public static int type(byte[] data) {
+        if (data.length < TYPE_SIZE) {
+            return -1;
+        }
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+    }
+
+    /**
+     * Parses the {@code key|value} lines of a text message. Lines without a separator are skipped, and for
+     * repeated keys the last value wins.
+     */
+    public static Map<String, String> text(byte[] data) {
+        final var fields = new HashMap<String, String>();
+        var end = data.length;
+        while (end > TYPE_SIZE && data[end - 1] == 0) {
+            end--;
+        }
+        var lineStart = TYPE_SIZE;
+        for (int i = TYPE_SIZE; i <= end; i++) {
+            if (i == end || data[i] == '\n') {
+                var separator = -1;
+                for (int j = lineStart; j < i; j++) {
+                    if (data[j] == '|') {
+                        separator = j;
+                        break;
+                    }
+                }
+                if (separator >= 0) {
+                    fields.put(
+                            new String(data, lineStart, separator - lineStart, StandardCharsets.UTF_8),
+                            new String(data, separator + 1, i - separator - 1, StandardCharsets.UTF_8)
+                    );
+                }
+                lineStart = i + 1;
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * A message with a type and nothing else, such as the hello the server sends as soon as a client connects.
+     */
+    public static byte[] empty(int type) {
+        return ByteBuffer.allocate(TYPE_SIZE).order(ByteOrder.LITTLE_ENDIAN).putInt(type).array();
+    }
+
+    /**
+     * Encodes a text message. The client expects it to be NUL terminated.
+     */
+    public static byte[] text(int type, String text) {
+        final var bytes = text.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(TYPE_SIZE + bytes.length + 1)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(type)
+                .put(bytes)
+                .array();
+    }
+}
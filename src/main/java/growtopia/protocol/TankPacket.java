@@ -0,0 +1,60 @@
+package growtopia.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Field access for {@link Messages#GAME_PACKET} messages, the binary packets the client uses for everything that
+ * happens in a world. Each is a fixed size header, optionally followed by extended data. Offsets here are into the
+ * whole message, type included.
+ */
+public final class TankPacket {
+    private TankPacket() {}
+
+    public static final int STATE = 0;
+    public static final int CALL_FUNCTION = 1;
+
+    static final int HEADER_SIZE = 56;
+    static final int TYPE_OFFSET = Messages.TYPE_SIZE;
+    static final int NET_ID_OFFSET = Messages.TYPE_SIZE + 4;
+    static final int FLAGS_OFFSET = Messages.TYPE_SIZE + 12;
+    static final int DELAY_OFFSET = Messages.TYPE_SIZE + 20;
+    static final int X_OFFSET = Messages.TYPE_SIZE + 24;
+    static final int Y_OFFSET = Messages.TYPE_SIZE + 28;
+    static final int EXTENDED_DATA_SIZE_OFFSET = Messages.TYPE_SIZE + 52;
+    static final int EXTENDED_DATA_OFFSET = Messages.TYPE_SIZE + HEADER_SIZE;
+
+    /**
+     * Whether the data is a game packet with a full header.
+     */
+    public static boolean is(byte[] data) {
+        return data.length >= EXTENDED_DATA_OFFSET && Messages.type(data) == Messages.GAME_PACKET;
+    }
+
+    private static ByteBuffer buffer(byte[] data) {
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static int type(byte[] data) {
+        return data[TYPE_OFFSET] & 0xFF;
+    }
+
+    public static int netID(byte[] data) {
+        return buffer(data).getInt(NET_ID_OFFSET);
+    }
+
+    public static void setNetID(byte[] data, int netID) {
+        buffer(data).putInt(NET_ID_OFFSET, netID);
+    }
+
+    /**
+     * Position in pixels, 32 to a tile.
+     */
+    public static float x(byte[] data) {
+        return buffer(data).getFloat(X_OFFSET);
+    }
+
+    public static float y(byte[] data) {
+        return buffer(data).getFloat(Y_OFFSET);
+    }
+}
@@ -0,0 +1,78 @@
+package growtopia.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A function call on the client, such as {@code OnConsoleMessage} or {@code OnSendToServer}. The first argument is
+ * the name of the function.
+ *
+ * It goes over the wire as a {@link TankPacket} of the call function type, whose extended data holds the
+ * arguments, each tagged with its index and type.
+ */
+public final class VariantList {
+    private static final byte FLOAT = 1;
+    private static final byte STRING = 2;
+    private static final byte INT = 9;
+
+    private final ByteArrayOutputStream arguments = new ByteArrayOutputStream();
+    private int count = 0;
+
+    public VariantList(String function) {
+        this.add(function);
+    }
+
+    private void tag(byte type) {
+        this.arguments.write(this.count++);
+        this.arguments.write(type);
+    }
+
+    public VariantList add(String value) {
+        final var bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.tag(STRING);
+        this.arguments.writeBytes(
+                ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length).array()
+        );
+        this.arguments.writeBytes(bytes);
+        return this;
+    }
+
+    public VariantList add(int value) {
+        this.tag(INT);
+        this.arguments.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+        return this;
+    }
+
+    public VariantList add(float value) {
+        this.tag(FLOAT);
+        this.arguments.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(value).array());
+        return this;
+    }
+
+    /**
+     * Encodes the call for every player, with no delay.
+     */
+    public byte[] encode() {
+        return this.encode(-1, 0);
+    }
+
+    /**
+     * Encodes the call, targeting the player with the given net ID and running it after a delay in milliseconds.
+     */
+    public byte[] encode(int netID, int delay) {
+        final var extendedData = this.arguments.toByteArray();
+        return ByteBuffer.allocate(TankPacket.EXTENDED_DATA_OFFSET + 1 + extendedData.length)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(Messages.GAME_PACKET)
+                .put(TankPacket.TYPE_OFFSET, (byte) TankPacket.CALL_FUNCTION)
+                .putInt(TankPacket.NET_ID_OFFSET, netID)
+                .putInt(TankPacket.FLAGS_OFFSET, 8)
+                .putInt(TankPacket.DELAY_OFFSET, delay)
+                .putInt(TankPacket.EXTENDED_DATA_SIZE_OFFSET, extendedData.length + 1)
+                .put(TankPacket.EXTENDED_DATA_OFFSET, (byte) this.count)
+                .put(TankPacket.EXTENDED_DATA_OFFSET + 1, extendedData)
+                .array();
+    }
+}
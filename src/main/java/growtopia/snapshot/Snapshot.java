@@ -0,0 +1,152 @@
+package growtopia.snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * State saved when the server stops, so that the next start can pick up where it left off instead of rebuilding
+ * everything cold.
+ *
+ * A snapshot is a file of named sections, each an opaque block of bytes owned by whatever wrote it. It is written
+ * through a memory mapping to a temporary file that is then moved over the old one, so a crash mid-write leaves
+ * the previous snapshot in place. Reading maps the file and hands out views of it, so nothing is copied until a
+ * section is decoded.
+ *
+ * Layout, big endian: magic, version, reserved short, creation time in epoch millis, section count, CRC32 of
+ * everything after the header. Then for each section: name length as a short, name in UTF-8, data length as an
+ * int, data.
+ */
+public final class Snapshot {
+    static final int MAGIC = 0x47545353; // "GTSS"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 24;
+
+    private final long createdEpochMillis;
+    private final Map<String, ByteBuffer> sections;
+
+    private Snapshot(long createdEpochMillis, Map<String, ByteBuffer> sections) {
+        this.createdEpochMillis = createdEpochMillis;
+        this.sections = sections;
+    }
+
+    /**
+     * Replaces whatever snapshot is at {@code file} with one holding the given sections.
+     */
+    public static void write(Path file, Map<String, byte[]> sections) {
+        var size = (long) HEADER_SIZE;
+        for (final var section : sections.entrySet()) {
+            size += 2 + section.getKey().getBytes(StandardCharsets.UTF_8).length + 4 + section.getValue().length;
+        }
+
+        final var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (final var channel = FileChannel.open(
+                    temporary,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE
+            )) {
+                final var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.position(HEADER_SIZE);
+                for (final var section : sections.entrySet()) {
+                    final var name = section.getKey().getBytes(StandardCharsets.UTF_8);
+                    buffer.putShort((short) name.length);
+                    buffer.put(name);
+                    buffer.putInt(section.getValue().length);
+                    buffer.put(section.getValue());
+                }
+
+                final var checksum = new CRC32();
+                checksum.update(buffer.slice(HEADER_SIZE, (int) size - HEADER_SIZE));
+                buffer.putInt(0, MAGIC);
+                buffer.putShort(4, VERSION);
+                buffer.putShort(6, (short) 0);
+                buffer.putLong(8, System.currentTimeMillis());
+                buffer.putInt(16, sections.size());
+                buffer.putInt(20, (int) checksum.getValue());
+                buffer.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps a snapshot written by {@link #write}. Throws {@link IllegalStateException} if the file isn't one, or has
+     * been damaged.
+     */
+    public static Snapshot map(Path file) {
+        final ByteBuffer buffer;
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException(file + " is not a snapshot");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IllegalStateException(file + " is snapshot version " + buffer.getShort(4));
+        }
+        final var checksum = new CRC32();
+        checksum.update(buffer.slice(HEADER_SIZE, buffer.limit() - HEADER_SIZE));
+        if ((int) checksum.getValue() != buffer.getInt(20)) {
+            throw new IllegalStateException(file + " is damaged");
+        }
+
+        final var sections = new LinkedHashMap<String, ByteBuffer>();
+        final var sectionCount = buffer.getInt(16);
+        buffer.position(HEADER_SIZE);
+        try {
+            for (var i = 0; i < sectionCount; i++) {
+                final var name = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(name);
+                final var length = buffer.getInt();
+                sections.put(new String(name, StandardCharsets.UTF_8), buffer.slice(buffer.position(), length));
+                buffer.position(buffer.position() + length);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(file + " is damaged", e);
+        }
+        return new Snapshot(buffer.getLong(8), Collections.unmodifiableMap(sections));
+    }
+
+    public long createdEpochMillis() {
+        return this.createdEpochMillis;
+    }
+
+    public Set<String> sections() {
+        return this.sections.keySet();
+    }
+
+    /**
+     * A read only view of a section's data, positioned at its start, or null if there is no such section.
+     */
+    public ByteBuffer section(String name) {
+        final var section = this.sections.get(name);
+        return section == null ? null : section.duplicate();
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot[" +
+                "createdEpochMillis=" + createdEpochMillis +
+                ", sections=" + sections.keySet() +
+                ']';
+    }
+}
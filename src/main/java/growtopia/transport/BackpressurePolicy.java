@@ -0,0 +1,20 @@
+package growtopia.transport;
+
+/**
+ * What a {@link ThrottledConnection} does once the remote end stops keeping up with what is sent to it.
+ */
+public enum BackpressurePolicy {
+    /**
+     * Skips droppable and superseded messages until the connection catches up.
+     */
+    DROP,
+    /**
+     * Skips droppable messages, and holds on to only the most recent of each superseded message until the
+     * connection catches up.
+     */
+    MERGE,
+    /**
+     * Disconnects as soon as the connection falls behind.
+     */
+    DISCONNECT
+}
@@ -0,0 +1,47 @@
+package growtopia.transport;
+
+/**
+ * One remote client as seen by a {@link ConnectionHandler}.
+ *
+ * The same instance is handed to every callback for a given connection, so it can be used as a map key.
+ */
+public interface Connection {
+    /**
+     * Unique among the connections a single transport has ever handed out.
+     */
+    long id();
+
+    /**
+     * Queues data for the remote end. Returns false if the transport refused it, for instance because the
+     * connection has already gone away.
+     *
+     * The transport may hold on to the array, so it must not be modified after it is sent.
+     */
+    boolean send(byte[] data, Delivery delivery);
+
+    /**
+     * Sends data that can be skipped without harm, such as particle effects, if the connection is falling behind.
+     */
+    default boolean sendDroppable(byte[] data, Delivery delivery) {
+        return this.send(data, delivery);
+    }
+
+    /**
+     * Sends data that is made obsolete by the next message with the same key, such as a player's position. If the
+     * connection is falling behind, only the most recent message for each key needs to get through.
+     */
+    default boolean sendLatest(long key, byte[] data, Delivery delivery) {
+        return this.send(data, delivery);
+    }
+
+    /**
+     * Bytes sent on this connection that the transport is still holding on to, either queued or waiting to be
+     * acknowledged.
+     */
+    long pendingData();
+
+    /**
+     * Asks the remote end to go away. The handler's {@code onDisconnect} follows once it has.
+     */
+    void disconnect();
+}
@@ -0,0 +1,25 @@
+package growtopia.transport;
+
+/**
+ * Game logic, independent of how bytes get to and from clients.
+ *
+ * Every callback for a transport is made from the same thread.
+ */
+public interface ConnectionHandler {
+    void onConnect(Connection connection);
+    void onReceive(Connection connection, byte[] data);
+    void onDisconnect(Connection connection);
+
+    /**
+     * Called between events when there is nothing to handle, and at least every few milliseconds while busy, so
+     * that work finished on other threads can be picked up on the service thread.
+     */
+    default void onIdle() {}
+
+    /**
+     * Called once on the service thread when the transport has been asked to stop, before it disconnects anyone.
+     * Events keep coming while connections drain, and every connection gets its disconnect before the transport
+     * returns, whether it went by itself or was dropped when the transport gave up waiting.
+     */
+    default void onStop() {}
+}
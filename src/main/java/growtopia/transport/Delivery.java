@@ -0,0 +1,19 @@
+package growtopia.transport;
+
+/**
+ * How a message should be delivered. Mirrors the guarantees ENet offers on a single channel.
+ */
+public enum Delivery {
+    /**
+     * Retransmitted until acknowledged and delivered in order.
+     */
+    RELIABLE,
+    /**
+     * Delivered in order if at all; anything older than the newest message seen is dropped.
+     */
+    UNRELIABLE,
+    /**
+     * Delivered at most once, in any order.
+     */
+    UNSEQUENCED
+}
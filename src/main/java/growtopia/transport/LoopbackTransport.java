@@ -0,0 +1,245 @@
+package growtopia.transport;
+
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process transport. Clients are plain objects that push messages onto a lock-free queue drained by
+ * {@link #run(ConnectionHandler)}, and read replies off a lock-free queue of their own.
+ *
+ * Nothing is copied or serialized on the way through, so what this measures is the cost of the handler itself.
+ * Any number of threads may drive clients, but each client should only be used by one thread at a time.
+ */
+public final class LoopbackTransport implements Transport {
+    private static final int CONNECT = 0;
+    private static final int RECEIVE = 1;
+    private static final int DISCONNECT = 2;
+
+    /**
+     * How many times the service loop spins on an empty inbox before it parks.
+     */
+    private static final int SPINS_BEFORE_PARKING = 1 << 10;
+
+    /**
+     * The longest the service loop stays parked, so the handler still gets its idle calls.
+     */
+    private static final long PARK_NANOS = 10_000_000L;
+
+    /**
+     * The longest the handler goes without {@link ConnectionHandler#onIdle()} while events keep coming.
+     */
+    private static final long IDLE_INTERVAL_NANOS = PARK_NANOS;
+
+    /**
+     * How many events are handled between looks at the clock, which costs more than handling most loopback events.
+     */
+    private static final int EVENTS_PER_CLOCK_CHECK = 16;
+
+    private record Event(int type, LoopbackConnection connection, byte[] data) {}
+
+    private final ConcurrentLinkedQueue<Event> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private volatile Thread serviceThread;
+    private volatile boolean parked;
+    private volatile boolean stopped;
+
+    public LoopbackTransport() {}
+
+    /**
+     * Opens a new connection. The handler's {@code onConnect} is called for it before anything the client sends.
+     */
+    public Client connect() {
+        final var connection = new LoopbackConnection(this.nextId.incrementAndGet());
+        this.offer(new Event(CONNECT, connection, null));
+        return new Client(connection);
+    }
+
+    /**
+     * Makes {@link #run(ConnectionHandler)} wind down. The handler gets its {@code onStop}, then whatever clients
+     * had already sent is handled, then every connection still open is disconnected, with an {@code onDisconnect}
+     * for each, and {@code run} returns. Nothing is in flight between clients and the handler, so there is nothing to
+     * wait for. Clients that connect once the transport is stopping are turned away without the handler hearing of
+     * them. A stop requested while {@code run} isn't running applies to the next one.
+     */
+    @Override
+    public void stop() {
+        this.stopped = true;
+        LockSupport.unpark(this.serviceThread);
+    }
+
+    private void offer(Event event) {
+        this.inbox.offer(event);
+        if (this.parked) {
+            LockSupport.unpark(this.serviceThread);
+        }
+    }
+
+    @Override
+    public void run(ConnectionHandler handler) {
+        this.serviceThread = Thread.currentThread();
+        final var connections = new HashSet<LoopbackConnection>();
+        var stopping = false;
+        var idle = 0;
+        var handled = 0;
+        var lastIdle = System.nanoTime();
+        while (true) {
+            if (this.stopped && !stopping) {
+                stopping = true;
+                handler.onStop();
+            }
+            final var event = this.inbox.poll();
+            if (event == null) {
+                if (stopping) {
+                    break;
+                }
+                if (++idle < SPINS_BEFORE_PARKING) {
+                    Thread.onSpinWait();
+                }
+                else {
+                    lastIdle = System.nanoTime();
+                    handler.onIdle();
+                    this.parked = true;
+                    if (this.inbox.isEmpty() && !this.stopped) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    this.parked = false;
+                }
+                continue;
+            }
+
+            idle = 0;
+            final var connection = event.connection();
+            switch (event.type()) {
+                case CONNECT -> {
+                    if (stopping) {
+                        connection.open.set(false);
+                    }
+                    else {
+                        connections.add(connection);
+                        handler.onConnect(connection);
+                    }
+                }
+                case RECEIVE -> {
+                    // A client may have checked it was open just before the server disconnected it.
+                    if (connection.open.get()) {
+                        handler.onReceive(connection, event.data());
+                    }
+                }
+                case DISCONNECT -> {
+                    if (connections.remove(connection)) {
+                        handler.onDisconnect(connection);
+                    }
+                }
+                default -> throw new IllegalStateException("Unknown event type " + event.type());
+            }
+
+            if (++handled % EVENTS_PER_CLOCK_CHECK == 0) {
+                final var now = System.nanoTime();
+                if (now - lastIdle >= IDLE_INTERVAL_NANOS) {
+                    lastIdle = now;
+                    handler.onIdle();
+                }
+            }
+        }
+
+        // Closed before any of them is dispatched, so the handler can't queue more events for a run that is over.
+        for (final var connection : connections) {
+            connection.open.set(false);
+        }
+        for (final var connection : connections) {
+            handler.onDisconnect(connection);
+        }
+        this.stopped = false;
+    }
+
+    private final class LoopbackConnection implements Connection {
+        private final long id;
+        private final ConcurrentLinkedQueue<byte[]> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingData = new AtomicLong();
+        private final AtomicBoolean open = new AtomicBoolean(true);
+
+        private LoopbackConnection(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public long id() {
+            return this.id;
+        }
+
+        @Override
+        public boolean send(byte[] data, Delivery delivery) {
+            if (!this.open.get()) {
+                return false;
+            }
+            this.pendingData.addAndGet(data.length);
+            return this.outbox.offer(data);
+        }
+
+        @Override
+        public long pendingData() {
+            return this.pendingData.get();
+        }
+
+        @Override
+        public void disconnect() {
+            if (this.open.compareAndSet(true, false)) {
+                LoopbackTransport.this.offer(new Event(DISCONNECT, this, null));
+            }
+        }
+
+        private byte[] poll() {
+            final var data = this.outbox.poll();
+            if (data != null) {
+                this.pendingData.addAndGet(-data.length);
+            }
+            return data;
+        }
+
+        @Override
+        public String toString() {
+            return "LoopbackConnection[id=" + this.id + ']';
+        }
+    }
+
+    /**
+     * The remote end of a loopback connection.
+     */
+    public final class Client {
+        private final LoopbackConnection connection;
+
+        private Client(LoopbackConnection connection) {
+            this.connection = connection;
+        }
+
+        public long id() {
+            return this.connection.id();
+        }
+
+        /**
+         * Hands data to the server. Returns false once this client has disconnected. Data still on its way when
+         * either end disconnects is dropped.
+         */
+        public boolean send(byte[] data) {
+            if (!this.connection.open.get()) {
+                return false;
+            }
+            LoopbackTransport.this.offer(new Event(RECEIVE, this.connection, data));
+            return true;
+        }
+
+        /**
+         * The next message the server sent to this client, or null if there is none yet.
+         */
+        public byte[] poll() {
+            return this.connection.poll();
+        }
+
+        public void disconnect() {
+            this.connection.disconnect();
+        }
+    }
+}
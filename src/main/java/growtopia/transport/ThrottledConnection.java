@@ -0,0 +1,180 @@
+package growtopia.transport;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Sits in front of a {@link Connection} and stops a client that can't keep up from making the server hold on to
+ * unbounded amounts of data for it.
+ *
+ * Once more than the soft limit is waiting in the transport, the connection counts as behind and its
+ * {@link BackpressurePolicy} decides what happens to droppable and superseded messages. Everything else is still
+ * sent, but if what is waiting in the transport and held here would ever exceed the hard limit, the connection is
+ * disconnected instead. So whatever the policy, no more than the hard limit is ever kept around for one client.
+ *
+ * Held messages go out, in the order their keys were first held, on the next send once the connection has caught
+ * up, or on an explicit {@link #flush()}.
+ */
+public final class ThrottledConnection implements Connection {
+    private record Held(byte[] data, Delivery delivery) {}
+
+    private final Connection connection;
+    private final long softLimit;
+    private final long hardLimit;
+    private final LinkedHashMap<Long, Held> held = new LinkedHashMap<>();
+    private BackpressurePolicy policy;
+    private long heldData;
+    private long dropped;
+    private long merged;
+    private boolean disconnected;
+
+    public ThrottledConnection(Connection connection, BackpressurePolicy policy, long softLimit, long hardLimit) {
+        if (softLimit > hardLimit) {
+            throw new IllegalArgumentException("Soft limit " + softLimit + " is above hard limit " + hardLimit);
+        }
+        this.connection = connection;
+        this.policy = policy;
+        this.softLimit = softLimit;
+        this.hardLimit = hardLimit;
+    }
+
+    public Connection connection() {
+        return this.connection;
+    }
+
+    public BackpressurePolicy policy() {
+        return this.policy;
+    }
+
+    public void setPolicy(BackpressurePolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * How many messages were skipped because the connection was behind.
+     */
+    public long dropped() {
+        return this.dropped;
+    }
+
+    /**
+     * How many held messages were replaced by a newer one with the same key before they could be sent.
+     */
+    public long merged() {
+        return this.merged;
+    }
+
+    public boolean isBehind() {
+        return this.connection.pendingData() >= this.softLimit;
+    }
+
+    /**
+     * Sends as many held messages as the connection has room for. Returns false if the connection has been
+     * disconnected.
+     */
+    public boolean flush() {
+        final var iterator = this.held.values().iterator();
+        while (!this.disconnected && iterator.hasNext() && !this.isBehind()) {
+            final var message = iterator.next();
+            iterator.remove();
+            this.heldData -= message.data().length;
+            this.connection.send(message.data(), message.delivery());
+        }
+        return !this.disconnected;
+    }
+
+    /**
+     * Disconnects if taking on {@code length} more bytes would put this client over the hard limit, or if it is
+     * behind at all and the policy says to give up on it.
+     */
+    private boolean overLimit(long length) {
+        if (this.connection.pendingData() + this.heldData + length > this.hardLimit
+                || (this.policy == BackpressurePolicy.DISCONNECT && this.isBehind())) {
+            this.disconnect();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public long id() {
+        return this.connection.id();
+    }
+
+    @Override
+    public boolean send(byte[] data, Delivery delivery) {
+        if (!this.flush() || this.overLimit(data.length)) {
+            return false;
+        }
+        return this.connection.send(data, delivery);
+    }
+
+    @Override
+    public boolean sendDroppable(byte[] data, Delivery delivery) {
+        if (!this.flush()) {
+            return false;
+        }
+        if (this.isBehind() && this.policy != BackpressurePolicy.DISCONNECT) {
+            this.dropped++;
+            return false;
+        }
+        return this.send(data, delivery);
+    }
+
+    @Override
+    public boolean sendLatest(long key, byte[] data, Delivery delivery) {
+        if (!this.flush()) {
+            return false;
+        }
+        if (!this.isBehind() && !this.held.containsKey(key)) {
+            return this.send(data, delivery);
+        }
+        switch (this.policy) {
+            case DROP -> {
+                this.dropped++;
+                return false;
+            }
+            case MERGE -> {
+                if (this.overLimit(data.length)) {
+                    return false;
+                }
+                final var previous = this.held.put(key, new Held(data, delivery));
+                this.heldData += data.length;
+                if (previous != null) {
+                    this.heldData -= previous.data().length;
+                    this.merged++;
+                }
+                return true;
+            }
+            default -> {
+                this.disconnect();
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public long pendingData() {
+        return this.connection.pendingData() + this.heldData;
+    }
+
+    @Override
+    public void disconnect() {
+        if (!this.disconnected) {
+            this.disconnected = true;
+            this.held.clear();
+            this.heldData = 0;
+            this.connection.disconnect();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ThrottledConnection[" +
+                "connection=" + this.connection +
+                ", policy=" + this.policy +
+                ", heldData=" + this.heldData +
+                ", dropped=" + this.dropped +
+                ", merged=" + this.merged +
+                ']';
+    }
+}
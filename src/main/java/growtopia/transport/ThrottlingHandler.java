@@ -0,0 +1,83 @@
+package growtopia.transport;
+
+import java.util.HashMap;
+import java.util.function.Function;
+
+/**
+ * Hands the wrapped handler a {@link ThrottledConnection} in place of every connection, with a policy picked per
+ * connection when it is opened.
+ */
+public final class ThrottlingHandler implements ConnectionHandler {
+    /**
+     * The most reliable data ENet keeps in flight to one peer, so a client that is this far behind has a full window
+     * and a queue behind it.
+     */
+    public static final long DEFAULT_SOFT_LIMIT = 64 * 1024;
+    public static final long DEFAULT_HARD_LIMIT = 1024 * 1024;
+
+    private final ConnectionHandler handler;
+    private final Function<Connection, BackpressurePolicy> policyFor;
+    private final long softLimit;
+    private final long hardLimit;
+    private final HashMap<Connection, ThrottledConnection> connections = new HashMap<>();
+
+    public ThrottlingHandler(ConnectionHandler handler,
+                             Function<Connection, BackpressurePolicy> policyFor,
+                             long softLimit,
+                             long hardLimit) {
+        this.handler = handler;
+        this.policyFor = policyFor;
+        this.softLimit = softLimit;
+        this.hardLimit = hardLimit;
+    }
+
+    public ThrottlingHandler(ConnectionHandler handler, Function<Connection, BackpressurePolicy> policyFor) {
+        this(handler, policyFor, DEFAULT_SOFT_LIMIT, DEFAULT_HARD_LIMIT);
+    }
+
+    private ThrottledConnection throttled(Connection connection) {
+        return this.connections.computeIfAbsent(connection, c -> new ThrottledConnection(
+                c,
+                this.policyFor.apply(c),
+                this.softLimit,
+                this.hardLimit
+        ));
+    }
+
+    @Override
+    public void onConnect(Connection connection) {
+        this.handler.onConnect(this.throttled(connection));
+    }
+
+    @Override
+    public void onReceive(Connection connection, byte[] data) {
+        final var throttled = this.throttled(connection);
+        throttled.flush();
+        this.handler.onReceive(throttled, data);
+    }
+
+    @Override
+    public void onDisconnect(Connection connection) {
+        final var throttled = this.connections.remove(connection);
+        this.handler.onDisconnect(throttled == null ? connection : throttled);
+    }
+
+    @Override
+    public void onIdle() {
+        for (final var throttled : this.connections.values()) {
+            throttled.flush();
+        }
+        this.handler.onIdle();
+    }
+
+    /**
+     * Lets out whatever held messages there is room for, so they are queued ahead of the disconnect.
+     */
+    @Override
+    public void onStop() {
+        for (final var throttled : this.connections.values()) {
+            throttled.flush();
+        }
+        this.handler.onStop();
+    }
+}
@@ -0,0 +1,20 @@
+package growtopia.transport;
+
+/**
+ * Something that accepts connections and drives a {@link ConnectionHandler} with what arrives on them.
+ */
+public interface Transport {
+    /**
+     * Services connections on the calling thread until the transport stops.
+     */
+    void run(ConnectionHandler handler);
+
+    /**
+     * Asks {@link #run} to return. May be called from any thread, and before or while the transport runs.
+     *
+     * The handler gets {@link ConnectionHandler#onStop()}, then every connection is disconnected once what has been
+     * sent on it has gone out. Connections that take too long are cut off. Whatever is still queued is flushed to the
+     * network before {@code run} returns.
+     */
+    void stop();
+}
@@ -0,0 +1,219 @@
+package growtopia.world;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid of square cells over a rectangle, holding points that move around it.
+ *
+ * Points are identified by small integers handed out by {@link #insert} and reused after {@link #remove}. All state
+ * lives in parallel primitive arrays: each cell is the head of an intrusive doubly linked list threaded through
+ * {@code next} and {@code previous}, so moving a point between cells is a constant time unlink and relink, and
+ * moving it within its cell is just two stores. Queries write ids into a caller supplied array rather than
+ * allocating.
+ *
+ * Positions outside the rectangle are clamped into the cells along its edge.
+ */
+public final class SpatialGrid {
+    static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] heads;
+
+    private float[] xs = new float[INITIAL_CAPACITY];
+    private float[] ys = new float[INITIAL_CAPACITY];
+    private int[] cells = new int[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int[] previous = new int[INITIAL_CAPACITY];
+    private int capacity = 0;
+    private int size = 0;
+    private int free = NONE;
+
+    public SpatialGrid(float width, float height, float cellSize) {
+        if (!(width > 0 && height > 0 && cellSize > 0)) {
+            throw new IllegalArgumentException("width, height and cellSize must be positive");
+        }
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.heads = new int[this.columns * this.rows];
+        Arrays.fill(this.heads, NONE);
+    }
+
+    public int columns() {
+        return this.columns;
+    }
+
+    public int rows() {
+        return this.rows;
+    }
+
+    public float cellSize() {
+        return this.cellSize;
+    }
+
+    /**
+     * How many points are in the grid.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * One more than the highest id handed out so far. An array this long can hold the result of any query.
+     */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    public float x(int id) {
+        return this.xs[id];
+    }
+
+    public float y(int id) {
+        return this.ys[id];
+    }
+
+    /**
+     * The cell a point is in, as {@code row * columns() + column}.
+     */
+    public int cell(int id) {
+        return this.cells[id];
+    }
+
+    public int column(float x) {
+        return Math.max(0, Math.min(this.columns - 1, (int) Math.floor(x / this.cellSize)));
+    }
+
+    public int row(float y) {
+        return Math.max(0, Math.min(this.rows - 1, (int) Math.floor(y / this.cellSize)));
+    }
+
+    private void grow() {
+        final var length = this.xs.length * 2;
+        this.xs = Arrays.copyOf(this.xs, length);
+        this.ys = Arrays.copyOf(this.ys, length);
+        this.cells = Arrays.copyOf(this.cells, length);
+        this.next = Arrays.copyOf(this.next, length);
+        this.previous = Arrays.copyOf(this.previous, length);
+    }
+
+    private void link(int id, int cell) {
+        final var head = this.heads[cell];
+        this.cells[id] = cell;
+        this.previous[id] = NONE;
+        this.next[id] = head;
+        if (head != NONE) {
+            this.previous[head] = id;
+        }
+        this.heads[cell] = id;
+    }
+
+    private void unlink(int id) {
+        final var before = this.previous[id];
+        final var after = this.next[id];
+        if (before == NONE) {
+            this.heads[this.cells[id]] = after;
+        }
+        else {
+            this.next[before] = after;
+        }
+        if (after != NONE) {
+            this.previous[after] = before;
+        }
+    }
+
+    /**
+     * Adds a point and returns its id.
+     */
+    public int insert(float x, float y) {
+        final int id;
+        if (this.free != NONE) {
+            id = this.free;
+            this.free = this.next[id];
+        }
+        else {
+            if (this.capacity == this.xs.length) {
+                this.grow();
+            }
+            id = this.capacity++;
+        }
+        this.xs[id] = x;
+        this.ys[id] = y;
+        this.link(id, this.row(y) * this.columns + this.column(x));
+        this.size++;
+        return id;
+    }
+
+    public void move(int id, float x, float y) {
+        this.xs[id] = x;
+        this.ys[id] = y;
+        final var cell = this.row(y) * this.columns + this.column(x);
+        if (cell != this.cells[id]) {
+            this.unlink(id);
+            this.link(id, cell);
+        }
+    }
+
+    public void remove(int id) {
+        this.unlink(id);
+        this.cells[id] = NONE;
+        this.next[id] = this.free;
+        this.free = id;
+        this.size--;
+    }
+
+    /**
+     * Writes the ids of every point within {@code radius} of the given position into {@code out}, and returns how
+     * many there were. Only the cells overlapping the circle's bounding box are visited.
+     */
+    public int withinRadius(float x, float y, float radius, int[] out) {
+        final var radiusSquared = radius * radius;
+        final var lastColumn = this.column(x + radius);
+        final var lastRow = this.row(y + radius);
+        var count = 0;
+        for (var row = this.row(y - radius); row <= lastRow; row++) {
+            for (var column = this.column(x - radius); column <= lastColumn; column++) {
+                for (var id = this.heads[row * this.columns + column]; id != NONE; id = this.next[id]) {
+                    final var dx = this.xs[id] - x;
+                    final var dy = this.ys[id] - y;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        out[count++] = id;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the ids of every point in the given inclusive range of cells into {@code out}, and returns how many
+     * there were. The range is clamped to the grid.
+     */
+    public int inCells(int firstColumn, int firstRow, int lastColumn, int lastRow, int[] out) {
+        final var fromColumn = Math.max(0, firstColumn);
+        final var toColumn = Math.min(this.columns - 1, lastColumn);
+        final var toRow = Math.min(this.rows - 1, lastRow);
+        var count = 0;
+        for (var row = Math.max(0, firstRow); row <= toRow; row++) {
+            for (var column = fromColumn; column <= toColumn; column++) {
+                for (var id = this.heads[row * this.columns + column]; id != NONE; id = this.next[id]) {
+                    out[count++] = id;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "SpatialGrid[" +
+                "columns=" + columns +
+                ", rows=" + rows +
+                ", cellSize=" + cellSize +
+                ", size=" + size +
+                ']';
+    }
+}
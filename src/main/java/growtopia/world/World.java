@@ -0,0 +1,221 @@
+package growtopia.world;
+
+import growtopia.transport.Connection;
+import growtopia.transport.Delivery;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The players in one world and where they are in it.
+ *
+ * Each player gets a net id, which is also their id in the world's {@link SpatialGrid}, for as long as they stay.
+ * Besides {@link #broadcast}, updates can be fanned out to only the players near a position or in the chunks
+ * around a tile, so that the cost of an update grows with how crowded it is where it happened rather than with
+ * the size of the world.
+ */
+public final class World {
+    public static final int TILE_SIZE = 32;
+    public static final int DEFAULT_WIDTH = 100;
+    public static final int DEFAULT_HEIGHT = 60;
+
+    /**
+     * Width and height of a chunk, in tiles. Chunks are the cells of the spatial index.
+     */
+    public static final int CHUNK_SIZE = 8;
+
+    private final String name;
+    private final int width;
+    private final int height;
+    private final SpatialGrid grid;
+    private final HashMap<Connection, Integer> netIDs = new HashMap<>();
+    private Connection[] players = new Connection[16];
+    private int[] scratch = new int[16];
+
+    public World(String name, int width, int height) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.grid = new SpatialGrid(width * TILE_SIZE, height * TILE_SIZE, CHUNK_SIZE * TILE_SIZE);
+    }
+
+    public World(String name) {
+        this(name, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    }
+
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Size in tiles.
+     */
+    public int width() {
+        return this.width;
+    }
+
+    public int height() {
+        return this.height;
+    }
+
+    public int playerCount() {
+        return this.grid.size();
+    }
+
+    public boolean contains(Connection connection) {
+        return this.netIDs.containsKey(connection);
+    }
+
+    /**
+     * The player's net id, or -1 if they aren't in this world.
+     */
+    public int netID(Connection connection) {
+        return this.netIDs.getOrDefault(connection, -1);
+    }
+
+    /**
+     * Adds a player at a position in pixels and returns their net id. A player already in the world is moved
+     * there instead.
+     */
+    public int join(Connection connection, float x, float y) {
+        final var existing = this.netIDs.get(connection);
+        if (existing != null) {
+            this.grid.move(existing, x, y);
+            return existing;
+        }
+        final var netID = this.grid.insert(x, y);
+        if (netID >= this.players.length) {
+            this.players = Arrays.copyOf(this.players, this.players.length * 2);
+        }
+        this.players[netID] = connection;
+        this.netIDs.put(connection, netID);
+        return netID;
+    }
+
+    public void leave(Connection connection) {
+        final var netID = this.netIDs.remove(connection);
+        if (netID != null) {
+            this.grid.remove(netID);
+            this.players[netID] = null;
+        }
+    }
+
+    /**
+     * Records a player's new position in pixels. Returns false if they aren't in this world.
+     */
+    public boolean move(Connection connection, float x, float y) {
+        final var netID = this.netIDs.get(connection);
+        if (netID == null) {
+            return false;
+        }
+        this.grid.move(netID, x, y);
+        return true;
+    }
+
+    public float x(Connection connection) {
+        return this.grid.x(this.netIDs.get(connection));
+    }
+
+    public float y(Connection connection) {
+        return this.grid.y(this.netIDs.get(connection));
+    }
+
+    private int[] scratch() {
+        if (this.scratch.length < this.grid.capacity()) {
+            this.scratch = new int[Math.max(this.grid.capacity(), this.scratch.length * 2)];
+        }
+        return this.scratch;
+    }
+
+    private int send(int[] ids, int count, Connection except, byte[] data, Delivery delivery) {
+        var sent = 0;
+        for (var i = 0; i < count; i++) {
+            final var player = this.players[ids[i]];
+            if (player != except && player.send(data, delivery)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    private int sendLatest(int[] ids, int count, Connection except, long key, byte[] data, Delivery delivery) {
+        var sent = 0;
+        for (var i = 0; i < count; i++) {
+            final var player = this.players[ids[i]];
+            if (player != except && player.sendLatest(key, data, delivery)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Sends to every player in the world except {@code except}, which may be null. Returns how many it was sent to.
+     */
+    public int broadcast(byte[] data, Delivery delivery, Connection except) {
+        var sent = 0;
+        for (final var player : this.netIDs.keySet()) {
+            if (player != except && player.send(data, delivery)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Sends to every player within {@code radius} pixels of a position, except {@code except}, which may be null.
+     * Returns how many it was sent to.
+     */
+    public int sendWithinRadius(float x, float y, float radius, byte[] data, Delivery delivery, Connection except) {
+        final var ids = this.scratch();
+        return this.send(ids, this.grid.withinRadius(x, y, radius, ids), except, data, delivery);
+    }
+
+    /**
+     * Like {@link #sendWithinRadius}, for data superseded by the next message with the same key.
+     *
+     * @see Connection#sendLatest
+     */
+    public int sendLatestWithinRadius(float x,
+                                      float y,
+                                      float radius,
+                                      long key,
+                                      byte[] data,
+                                      Delivery delivery,
+                                      Connection except) {
+        final var ids = this.scratch();
+        return this.sendLatest(ids, this.grid.withinRadius(x, y, radius, ids), except, key, data, delivery);
+    }
+
+    /**
+     * Sends to every player in the chunk holding a tile and the {@code chunkRadius} chunks around it on each side,
+     * except {@code except}, which may be null. Returns how many it was sent to.
+     */
+    public int sendToChunks(int tileX,
+                            int tileY,
+                            int chunkRadius,
+                            byte[] data,
+                            Delivery delivery,
+                            Connection except) {
+        final var column = this.grid.column(tileX * TILE_SIZE);
+        final var row = this.grid.row(tileY * TILE_SIZE);
+        final var ids = this.scratch();
+        final var count = this.grid.inCells(
+                column - chunkRadius,
+                row - chunkRadius,
+                column + chunkRadius,
+                row + chunkRadius,
+                ids
+        );
+        return this.send(ids, count, except, data, delivery);
+    }
+
+    @Override
+    public String toString() {
+        return "World[" +
+                "name=" + name +
+                ", width=" + width +
+                ", height=" + height +
+                ", players=" + this.playerCount() +
+                ']';
+    }
+}
@@ -0,0 +1,190 @@
+package growtopia.world;
+
+import growtopia.protocol.VariantList;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The worlds with players in them, ranked by how many, for the world select menu.
+ *
+ * The ranking is kept up to date as players come and go, one reinsertion per change, so nothing is sorted when
+ * the menu is asked for. The encoded {@code OnRequestWorldSelectMenu} packet is cached and rebuilt at most once per
+ * refresh interval, and only if the ranking has changed since. Everyone who opens the menu in between is sent the
+ * same array.
+ *
+ * The ranking can be carried across a restart with {@link #snapshot()} and {@link #restore(ByteBuffer)}. A restored
+ * ranking only stands in for the cached menu, so players coming back see the worlds that were busy before the
+ * restart until as many worlds are busy again, or for at most {@link #RESTORED_MENU_NANOS}.
+ */
+public final class WorldDirectory {
+    public static final long DEFAULT_REFRESH_INTERVAL_NANOS = 1_000_000_000L;
+    public static final int DEFAULT_MENU_SIZE = 32;
+    static final long RESTORED_MENU_NANOS = 60_000_000_000L;
+
+    private static final String FLOATER_SCALE = "0.5";
+    private static final String FLOATER_COLOR = "3529161471";
+
+    private record Entry(String name, int players) {}
+
+    private static final Comparator<Entry> RANKING = Comparator.comparingInt(Entry::players)
+            .reversed()
+            .thenComparing(Entry::name);
+
+    private final long refreshIntervalNanos;
+    private final int menuSize;
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> ranking = new TreeSet<>(RANKING);
+    private byte[] menu;
+    private long builtNanos;
+    private boolean changed = true;
+    private int restoredWorlds = 0;
+    private long restoredUntilNanos;
+
+    public WorldDirectory(long refreshIntervalNanos, int menuSize) {
+        this.refreshIntervalNanos = refreshIntervalNanos;
+        this.menuSize = menuSize;
+    }
+
+    public WorldDirectory() {
+        this(DEFAULT_REFRESH_INTERVAL_NANOS, DEFAULT_MENU_SIZE);
+    }
+
+    /**
+     * Records how many players a world has. Worlds with none are dropped.
+     */
+    public void update(String world, int players) {
+        final var previous = this.entries.get(world);
+        if (previous == null ? players <= 0 : previous.players() == players) {
+            return;
+        }
+        if (previous != null) {
+            this.entries.remove(world);
+            this.ranking.remove(previous);
+        }
+        if (players > 0) {
+            final var entry = new Entry(world, players);
+            this.entries.put(world, entry);
+            this.ranking.add(entry);
+        }
+        this.changed = true;
+    }
+
+    public int players(String world) {
+        final var entry = this.entries.get(world);
+        return entry == null ? 0 : entry.players();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * The names of up to {@code count} of the most populated worlds, most populated first. Ties go alphabetically.
+     */
+    public List<String> top(int count) {
+        final var names = new ArrayList<String>(Math.min(count, this.ranking.size()));
+        for (final var entry : this.ranking) {
+            if (names.size() == count) {
+                break;
+            }
+            names.add(entry.name());
+        }
+        return names;
+    }
+
+    /**
+     * The current ranking, encoded for {@link #restore(ByteBuffer)}: a count, then each world's name, with a short
+     * length in front, and player count, busiest first. Worlds whose names don't fit the length are left out.
+     */
+    public byte[] snapshot() {
+        final var names = new byte[this.ranking.size()][];
+        final var players = new int[this.ranking.size()];
+        var count = 0;
+        var size = 4;
+        for (final var entry : this.ranking) {
+            final var name = entry.name().getBytes(StandardCharsets.UTF_8);
+            if (name.length <= 0xFFFF) {
+                names[count] = name;
+                players[count++] = entry.players();
+                size += 2 + name.length + 4;
+            }
+        }
+
+        final var buffer = ByteBuffer.allocate(size).putInt(count);
+        for (var i = 0; i < count; i++) {
+            buffer.putShort((short) names[i].length).put(names[i]).putInt(players[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Serves the menu for a ranking from a {@link #snapshot()} while the live ranking fills back up. The live
+     * counts are left alone.
+     */
+    public void restore(ByteBuffer snapshot) {
+        final var restored = new TreeSet<>(RANKING);
+        final var count = snapshot.getInt();
+        for (var i = 0; i < count; i++) {
+            final var name = new byte[Short.toUnsignedInt(snapshot.getShort())];
+            snapshot.get(name);
+            restored.add(new Entry(new String(name, StandardCharsets.UTF_8), snapshot.getInt()));
+        }
+        this.menu = this.encode(restored);
+        this.restoredWorlds = Math.min(restored.size(), this.menuSize);
+        this.restoredUntilNanos = System.nanoTime() + RESTORED_MENU_NANOS;
+    }
+
+    /**
+     * The encoded world select menu. The array is shared and must not be modified.
+     */
+    public byte[] menu() {
+        final var now = System.nanoTime();
+        if (this.restoredWorlds > 0) {
+            if (this.entries.size() < this.restoredWorlds && now - this.restoredUntilNanos < 0) {
+                return this.menu;
+            }
+            this.restoredWorlds = 0;
+            this.menu = null;
+        }
+        if (this.menu == null || (this.changed && now - this.builtNanos >= this.refreshIntervalNanos)) {
+            this.menu = this.encode(this.ranking);
+            this.builtNanos = now;
+            this.changed = false;
+        }
+        return this.menu;
+    }
+
+    private byte[] encode(TreeSet<Entry> ranking) {
+        final var text = new StringBuilder("default|\nadd_button|Showing: `wWorlds``|_catselect_|0.6|3529161471|\n");
+        var listed = 0;
+        for (final var entry : ranking) {
+            if (listed++ == this.menuSize) {
+                break;
+            }
+            text.append("add_floater|")
+                    .append(entry.name())
+                    .append('|')
+                    .append(entry.players())
+                    .append('|')
+                    .append(FLOATER_SCALE)
+                    .append('|')
+                    .append(FLOATER_COLOR)
+                    .append('\n');
+        }
+        return new VariantList("OnRequestWorldSelectMenu").add(text.toString()).encode();
+    }
+
+    @Override
+    public String toString() {
+        return "WorldDirectory[" +
+                "worlds=" + entries.size() +
+                ", refreshIntervalNanos=" + refreshIntervalNanos +
+                ", menuSize=" + menuSize +
+                ']';
+    }
+}
@@ -0,0 +1,177 @@
+package growtopia.world;
+
+import growtopia.protocol.Messages;
+import growtopia.protocol.TankPacket;
+import growtopia.transport.Connection;
+import growtopia.transport.ConnectionHandler;
+import growtopia.transport.Delivery;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Keeps track of which world each player is in and where, in front of the game handler.
+ *
+ * Players enter a world on {@code join_request} and leave it on {@code quit_to_exit}, on joining another, or on
+ * disconnecting; a world exists for as long as anyone is in it. State packets update the player's position and are
+ * relayed, with the sender's net id, to the other players within {@link #interestRadius()} pixels only. Each relay
+ * is sent with {@link Connection#sendLatest}, keyed by the sender, so a peer that falls behind skips to the newest
+ * position. Every message is still passed on, and the game handler can use {@link #world} for its own fan-out.
+ *
+ * Player counts are kept in a {@link WorldDirectory}, whose menu is sent when a client enters the game and
+ * whenever it leaves a world. Once the transport starts stopping, the directory is left as it was rather than
+ * emptied as everyone is disconnected, so that it can be saved for the next start.
+ */
+public final class WorldHandler implements ConnectionHandler {
+    /**
+     * A little more than the client shows at once, so players are already moving when they come into view.
+     */
+    public static final float DEFAULT_INTEREST_RADIUS = 24 * World.TILE_SIZE;
+
+    /**
+     * The longest world name the game client lets players type. Longer ones in a {@code join_request} are ignored.
+     */
+    public static final int MAXIMUM_WORLD_NAME_LENGTH = 24;
+
+    private final ConnectionHandler handler;
+    private final float interestRadius;
+    private final WorldDirectory directory;
+    private final HashMap<String, World> worlds = new HashMap<>();
+    private final HashMap<Connection, World> worldOf = new HashMap<>();
+    private boolean stopping = false;
+
+    public WorldHandler(ConnectionHandler handler, float interestRadius, WorldDirectory directory) {
+        this.handler = handler;
+        this.interestRadius = interestRadius;
+        this.directory = directory;
+    }
+
+    public WorldHandler(ConnectionHandler handler) {
+        this(handler, DEFAULT_INTEREST_RADIUS, new WorldDirectory());
+    }
+
+    public float interestRadius() {
+        return this.interestRadius;
+    }
+
+    /**
+     * The world a player is in, or null.
+     */
+    public World world(Connection connection) {
+        return this.worldOf.get(connection);
+    }
+
+    /**
+     * The world with the given name, or null if nobody is in it.
+     */
+    public World world(String name) {
+        return this.worlds.get(name.toUpperCase());
+    }
+
+    public WorldDirectory directory() {
+        return this.directory;
+    }
+
+    public Collection<World> worlds() {
+        return Collections.unmodifiableCollection(this.worlds.values());
+    }
+
+    private void join(Connection connection, String name) {
+        this.leave(connection);
+        final var world = this.worlds.computeIfAbsent(name, World::new);
+        world.join(connection, 0, 0);
+        this.worldOf.put(connection, world);
+        this.directory.update(world.name(), world.playerCount());
+    }
+
+    private void leave(Connection connection) {
+        final var world = this.worldOf.remove(connection);
+        if (world != null) {
+            world.leave(connection);
+            if (!this.stopping) {
+                this.directory.update(world.name(), world.playerCount());
+            }
+            if (world.playerCount() == 0) {
+                this.worlds.remove(world.name());
+            }
+        }
+    }
+
+    private void move(Connection connection, byte[] data) {
+        final var world = this.worldOf.get(connection);
+        if (world == null) {
+            return;
+        }
+        final var x = TankPacket.x(data);
+        final var y = TankPacket.y(data);
+        world.move(connection, x, y);
+
+        final var relayed = data.clone();
+        TankPacket.setNetID(relayed, world.netID(connection));
+        world.sendLatestWithinRadius(
+                x,
+                y,
+                this.interestRadius,
+                connection.id(),
+                relayed,
+                Delivery.RELIABLE,
+                connection
+        );
+    }
+
+    private void sendMenu(Connection connection) {
+        connection.send(this.directory.menu(), Delivery.RELIABLE);
+    }
+
+    @Override
+    public void onConnect(Connection connection) {
+        this.handler.onConnect(connection);
+    }
+
+    @Override
+    public void onReceive(Connection connection, byte[] data) {
+        switch (Messages.type(data)) {
+            case Messages.GENERIC_TEXT -> {
+                if ("enter_game".equals(Messages.text(data).get("action"))) {
+                    this.sendMenu(connection);
+                }
+            }
+            case Messages.GAME_MESSAGE -> {
+                final var fields = Messages.text(data);
+                final var action = fields.get("action");
+                final var name = fields.get("name");
+                if ("join_request".equals(action) && name != null && name.length() <= MAXIMUM_WORLD_NAME_LENGTH) {
+                    this.join(connection, name.toUpperCase());
+                }
+                else if ("quit_to_exit".equals(action)) {
+                    this.leave(connection);
+                    this.sendMenu(connection);
+                }
+            }
+            case Messages.GAME_PACKET -> {
+                if (TankPacket.is(data) && TankPacket.type(data) == TankPacket.STATE) {
+                    this.move(connection, data);
+                }
+            }
+            default -> {}
+        }
+        this.handler.onReceive(connection, data);
+    }
+
+    @Override
+    public void onDisconnect(Connection connection) {
+        this.leave(connection);
+        this.handler.onDisconnect(connection);
+    }
+
+    @Override
+    public void onIdle() {
+        this.handler.onIdle();
+    }
+
+    @Override
+    public void onStop() {
+        this.stopping = true;
+        this.handler.onStop();
+    }
+}
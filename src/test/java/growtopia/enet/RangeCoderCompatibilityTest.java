@@ -0,0 +1,177 @@
+package growtopia.enet;
+
+import growtopia.enet.codec.RangeCoder;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import jdk.incubator.foreign.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static jdk.incubator.foreign.CLinker.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks {@link RangeCoder} against libenet's own range coder, which is what the game client runs. Needs libenet
+ * where {@link Enet} looks for it, like the server does, and is skipped without it.
+ */
+final class RangeCoderCompatibilityTest {
+    private static final int MAXIMUM_MTU = 4096;
+
+    private static MethodHandle enetRangeCoderCreate;
+    private static MethodHandle enetRangeCoderDestroy;
+    private static MethodHandle enetRangeCoderCompress;
+    private static MethodHandle enetRangeCoderDecompress;
+
+    private static LibraryLookup libenet() {
+        try {
+            return Enet.LIBRARY_LOOKUP;
+        } catch (LinkageError e) {
+            // Enet binds all of its functions when it loads, which fails when libenet isn't there.
+            return null;
+        }
+    }
+
+    @BeforeAll
+    static void bindLibenet() {
+        final var libenet = libenet();
+        assumeTrue(libenet != null, "libenet not found where Enet looks for it");
+        final var linker = CLinker.getInstance();
+        enetRangeCoderCreate = linker.downcallHandle(
+                libenet.lookup("enet_range_coder_create").get(),
+                MethodType.methodType(MemoryAddress.class),
+                FunctionDescriptor.of(C_POINTER)
+        );
+        enetRangeCoderDestroy = linker.downcallHandle(
+                libenet.lookup("enet_range_coder_destroy").get(),
+                MethodType.methodType(void.class, MemoryAddress.class),
+                FunctionDescriptor.ofVoid(C_POINTER)
+        );
+        enetRangeCoderCompress = linker.downcallHandle(
+                libenet.lookup("enet_range_coder_compress").get(),
+                MethodType.methodType(
+                        long.class,
+                        MemoryAddress.class,
+                        MemoryAddress.class,
+                        long.class,
+                        long.class,
+                        MemoryAddress.class,
+                        long.class
+                ),
+                FunctionDescriptor.of(C_LONG, C_POINTER, C_POINTER, C_LONG, C_LONG, C_POINTER, C_LONG)
+        );
+        enetRangeCoderDecompress = linker.downcallHandle(
+                libenet.lookup("enet_range_coder_decompress").get(),
+                MethodType.methodType(
+                        long.class,
+                        MemoryAddress.class,
+                        MemoryAddress.class,
+                        long.class,
+                        MemoryAddress.class,
+                        long.class
+                ),
+                FunctionDescriptor.of(C_LONG, C_POINTER, C_POINTER, C_LONG, C_POINTER, C_LONG)
+        );
+    }
+
+    /**
+     * A protocol header and a reliable send carrying a login, then a run and every byte value, so that the coder
+     * both escapes to new symbols and settles into its subcontexts.
+     */
+    private static final byte[] INPUT = input();
+
+    private static byte[] input() {
+        final var login = (
+                "action|log\nmsg|Server busy, you are number 5 in line.\n"
+                        + "requestedName|\ntankIDName|player\ntankIDPass|hunter2\nprotocol|84\ngame_version|3.36\n"
+        ).getBytes(StandardCharsets.UTF_8);
+        final var data = new byte[12 + login.length + 64 + 256];
+        final var header = new byte[] {(byte) 0x80, 0x00, 0x12, 0x34, 0x06, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x6D};
+        System.arraycopy(header, 0, data, 0, header.length);
+        System.arraycopy(login, 0, data, header.length, login.length);
+        for (var i = 0; i < 256; i++) {
+            data[data.length - 256 + i] = (byte) i;
+        }
+        return data;
+    }
+
+    /**
+     * Compresses with libenet, handing it the data in two ENetBuffers as a host would: the header, then the rest.
+     */
+    private static byte[] compressWithLibenet(byte[] data) throws Throwable {
+        final var context = (MemoryAddress) enetRangeCoderCreate.invoke();
+        try (final var in = MemorySegment.allocateNative(data.length);
+             final var buffers = MemorySegment.allocateNative(32);
+             final var out = MemorySegment.allocateNative(MAXIMUM_MTU)) {
+            in.copyFrom(MemorySegment.ofArray(data));
+            // struct { void *data; size_t dataLength; } each
+            final var split = 12;
+            MemoryAccess.setAddressAtOffset(buffers, 0, in.address());
+            MemoryAccess.setLongAtOffset(buffers, 8, split);
+            MemoryAccess.setAddressAtOffset(buffers, 16, in.address().addOffset(split));
+            MemoryAccess.setLongAtOffset(buffers, 24, data.length - split);
+
+            final var size = (long) enetRangeCoderCompress.invoke(
+                    context,
+                    buffers.address(),
+                    2L,
+                    (long) data.length,
+                    out.address(),
+                    (long) MAXIMUM_MTU
+            );
+            assertTrue(size > 0, "libenet compressed size");
+            return out.asSlice(0, size).toByteArray();
+        } finally {
+            enetRangeCoderDestroy.invoke(context);
+        }
+    }
+
+    private static byte[] decompressWithLibenet(byte[] data) throws Throwable {
+        final var context = (MemoryAddress) enetRangeCoderCreate.invoke();
+        try (final var in = MemorySegment.allocateNative(data.length);
+             final var out = MemorySegment.allocateNative(MAXIMUM_MTU)) {
+            in.copyFrom(MemorySegment.ofArray(data));
+            final var size = (long) enetRangeCoderDecompress.invoke(
+                    context,
+                    in.address(),
+                    (long) data.length,
+                    out.address(),
+                    (long) MAXIMUM_MTU
+            );
+            return out.asSlice(0, size).toByteArray();
+        } finally {
+            enetRangeCoderDestroy.invoke(context);
+        }
+    }
+
+    private static byte[] compressWithJava(byte[] data) {
+        final var out = new byte[MAXIMUM_MTU];
+        final var size = new RangeCoder().compress(data, 0, data.length, out, 0, out.length);
+        assertTrue(size > 0, "compressed size");
+        return Arrays.copyOf(out, size);
+    }
+
+    private static byte[] decompressWithJava(byte[] data) {
+        final var out = new byte[MAXIMUM_MTU];
+        final var size = new RangeCoder().decompress(data, 0, data.length, out, 0, out.length);
+        return Arrays.copyOf(out, size);
+    }
+
+    @Test
+    void compressesLikeLibenet() throws Throwable {
+        assertArrayEquals(compressWithLibenet(INPUT), compressWithJava(INPUT));
+    }
+
+    @Test
+    void decompressesWhatLibenetCompressed() throws Throwable {
+        assertArrayEquals(INPUT, decompressWithJava(compressWithLibenet(INPUT)));
+    }
+
+    @Test
+    void libenetDecompressesWhatThisCompressed() throws Throwable {
+        assertArrayEquals(INPUT, decompressWithLibenet(compressWithJava(INPUT)));
+    }
+}
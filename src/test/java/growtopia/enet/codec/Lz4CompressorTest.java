@@ -0,0 +1,101 @@
+package growtopia.enet.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class Lz4CompressorTest {
+    private static final int MAXIMUM_MTU = 4096;
+
+    private static final byte[] MENU = (
+            "default|\nadd_button|Showing: `wWorlds``|_catselect_|0.6|3529161471|\n"
+                    + "add_floater|START|12|0.5|3529161471\nadd_floater|BUY|4|0.5|3529161471\n"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private static int compress(Compressor compressor, byte[] data, byte[] out) {
+        return compressor.compress(data, 0, data.length, out, 0, out.length);
+    }
+
+    private static byte[] roundTrip(Compressor compressor, byte[] data) {
+        final var compressed = new byte[MAXIMUM_MTU * 2];
+        final var compressedSize = compress(compressor, data, compressed);
+        assertTrue(compressedSize > 0, "compressed size");
+
+        final var decompressed = new byte[MAXIMUM_MTU];
+        final var decompressedSize = compressor.decompress(
+                compressed, 0, compressedSize,
+                decompressed, 0, decompressed.length
+        );
+        return Arrays.copyOf(decompressed, decompressedSize);
+    }
+
+    @Test
+    void roundTripsText() {
+        assertArrayEquals(MENU, roundTrip(new Lz4Compressor(), MENU));
+        assertArrayEquals(MENU, roundTrip(new Lz4Compressor(Lz4Compressor.GROWTOPIA_DICTIONARY), MENU));
+    }
+
+    @Test
+    void dictionaryHelpsShortMessages() {
+        final var compressed = new byte[MAXIMUM_MTU];
+        final var plain = compress(new Lz4Compressor(), MENU, compressed);
+        final var primed = compress(new Lz4Compressor(Lz4Compressor.GROWTOPIA_DICTIONARY), MENU, compressed);
+        assertTrue(primed < plain, primed + " < " + plain);
+    }
+
+    @Test
+    void roundTripsRandomData() {
+        final var random = new Random(17091);
+        final var compressor = new Lz4Compressor(Lz4Compressor.GROWTOPIA_DICTIONARY);
+        for (var i = 0; i < 200; i++) {
+            final var data = new byte[1 + random.nextInt(1400)];
+            random.nextBytes(data);
+            assertArrayEquals(data, roundTrip(compressor, data));
+        }
+    }
+
+    @Test
+    void roundTripsLongRunsAndLiterals() {
+        // Long enough for both length fields to need continuation bytes, and for matches to overlap their output.
+        final var data = new byte[MAXIMUM_MTU];
+        new Random(1).nextBytes(data);
+        Arrays.fill(data, 300, 1200, (byte) 'a');
+        for (var i = 2000; i < 3000; i++) {
+            data[i] = (byte) "abc".charAt(i % 3);
+        }
+        assertArrayEquals(data, roundTrip(new Lz4Compressor(), data));
+    }
+
+    @Test
+    void refusesOutputThatDoesNotFit() {
+        assertEquals(0, new Lz4Compressor().compress(MENU, 0, MENU.length, new byte[8], 0, 8));
+    }
+
+    @Test
+    void survivesTruncatedInput() {
+        // A block cut off between sequences still decodes, to a prefix; anywhere else it is refused.
+        final var compressor = new Lz4Compressor(Lz4Compressor.GROWTOPIA_DICTIONARY);
+        final var compressed = new byte[MAXIMUM_MTU];
+        final var compressedSize = compress(compressor, MENU, compressed);
+        final var decompressed = new byte[MAXIMUM_MTU];
+        for (var length = 1; length < compressedSize; length++) {
+            final var decompressedSize = compressor.decompress(compressed, 0, length, decompressed, 0, MAXIMUM_MTU);
+            assertTrue(decompressedSize < MENU.length, "decompressed size");
+            assertArrayEquals(Arrays.copyOf(MENU, decompressedSize), Arrays.copyOf(decompressed, decompressedSize));
+        }
+    }
+
+    @Test
+    void rejectsOutputThatDoesNotFit() {
+        final var compressor = new Lz4Compressor();
+        final var compressed = new byte[MAXIMUM_MTU];
+        final var compressedSize = compress(compressor, MENU, compressed);
+        final var decompressed = new byte[MENU.length - 1];
+        assertEquals(0, compressor.decompress(compressed, 0, compressedSize, decompressed, 0, decompressed.length));
+    }
+}
@@ -0,0 +1,93 @@
+package growtopia.enet.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class RangeCoderTest {
+    private static final int MAXIMUM_MTU = 4096;
+
+    private static final byte[] LOGIN = (
+            "requestedName|\ntankIDName|player\ntankIDPass|hunter2\nf|1\nprotocol|84\ngame_version|3.36\n"
+                    + "cbits|0\nplayer_age|20\nGDPR|1\nplatformID|0\ndeviceVersion|0\ncountry|us\n"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] roundTrip(Compressor compressor, byte[] data) {
+        final var compressed = new byte[MAXIMUM_MTU];
+        final var compressedSize = compressor.compress(data, 0, data.length, compressed, 0, compressed.length);
+        assertTrue(compressedSize > 0, "compressed size");
+
+        final var decompressed = new byte[MAXIMUM_MTU];
+        final var decompressedSize = compressor.decompress(
+                compressed, 0, compressedSize,
+                decompressed, 0, decompressed.length
+        );
+        return Arrays.copyOf(decompressed, decompressedSize);
+    }
+
+    @Test
+    void roundTripsText() {
+        assertArrayEquals(LOGIN, roundTrip(new RangeCoder(), LOGIN));
+    }
+
+    @Test
+    void compressesText() {
+        final var compressed = new byte[MAXIMUM_MTU];
+        assertTrue(new RangeCoder().compress(LOGIN, 0, LOGIN.length, compressed, 0, compressed.length) < LOGIN.length);
+    }
+
+    @Test
+    void roundTripsRandomData() {
+        final var random = new Random(17091);
+        final var coder = new RangeCoder();
+        for (var i = 0; i < 200; i++) {
+            final var data = new byte[1 + random.nextInt(1400)];
+            random.nextBytes(data);
+            assertArrayEquals(data, roundTrip(coder, data));
+        }
+    }
+
+    @Test
+    void roundTripsRuns() {
+        final var data = new byte[MAXIMUM_MTU / 2];
+        Arrays.fill(data, 0, data.length / 2, (byte) 0);
+        Arrays.fill(data, data.length / 2, data.length, (byte) 0xFF);
+        assertArrayEquals(data, roundTrip(new RangeCoder(), data));
+    }
+
+    @Test
+    void keepsNoStateBetweenDatagrams() {
+        final var coder = new RangeCoder();
+        final var first = new byte[MAXIMUM_MTU];
+        final var firstSize = coder.compress(LOGIN, 0, LOGIN.length, first, 0, first.length);
+        coder.compress(new byte[] {1, 2, 3, 4, 5}, 0, 5, new byte[MAXIMUM_MTU], 0, MAXIMUM_MTU);
+        final var second = new byte[MAXIMUM_MTU];
+        final var secondSize = coder.compress(LOGIN, 0, LOGIN.length, second, 0, second.length);
+        assertArrayEquals(Arrays.copyOf(first, firstSize), Arrays.copyOf(second, secondSize));
+    }
+
+    @Test
+    void refusesOutputThatDoesNotFit() {
+        assertEquals(0, new RangeCoder().compress(LOGIN, 0, LOGIN.length, new byte[8], 0, 8));
+    }
+
+    @Test
+    void respectsOffsets() {
+        final var in = new byte[LOGIN.length + 10];
+        System.arraycopy(LOGIN, 0, in, 10, LOGIN.length);
+        final var coder = new RangeCoder();
+        final var compressed = new byte[MAXIMUM_MTU];
+        final var compressedSize = coder.compress(in, 10, LOGIN.length, compressed, 3, compressed.length - 3);
+        final var decompressed = new byte[MAXIMUM_MTU];
+        final var decompressedSize = coder.decompress(
+                compressed, 3, compressedSize,
+                decompressed, 7, decompressed.length - 7
+        );
+        assertArrayEquals(LOGIN, Arrays.copyOfRange(decompressed, 7, 7 + decompressedSize));
+    }
+}